@@ -0,0 +1,101 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.monoid.json.JSONException;
+
+/**
+ * End-to-end client calls against a FixtureServer on the loopback interface: the request pipeline, transfer, decompression and decoding,
+ * with no object or disk cache so that every call goes to the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class ClientBenchmark {
+
+    @Param({"true", "false"})
+    boolean compression;
+
+    @Param({"32"})
+    int batchSize;
+
+    FixtureServer server;
+    CoGe coge;
+    List<Integer> batchIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new FixtureServer();
+        coge = new CoGe(server.start());
+        coge.setCompression(compression);
+        coge.setCoalescing(false);
+        batchIds = new ArrayList<Integer>();
+        for (int i=0; i<batchSize; i++) batchIds.add(Fixtures.GENOME_ID+i);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public Genome fetchGenome() throws IOException, JSONException {
+        return coge.fetchGenome(Fixtures.GENOME_ID);
+    }
+
+    @Benchmark
+    public List<Genome> searchGenome() throws IOException, JSONException {
+        return coge.searchGenome("Glycine max", false);
+    }
+
+    @Benchmark
+    public Feature fetchFeature() throws IOException, JSONException {
+        return coge.fetchFeature(Fixtures.FEATURE_ID);
+    }
+
+    @Benchmark
+    public List<Feature> fetchGenomeFeatures() throws IOException, JSONException {
+        return coge.fetchGenomeFeatures(Fixtures.GENOME_ID, Fixtures.FEATURE_TYPE);
+    }
+
+    @Benchmark
+    public FeatureTable fetchGenomeFeatureTable() throws IOException {
+        return coge.fetchGenomeFeatureTable(Fixtures.GENOME_ID, Fixtures.FEATURE_TYPE);
+    }
+
+    @Benchmark
+    public String fetchChromosomeSequence() throws IOException, JSONException {
+        return coge.fetchChromosomeSequence(Fixtures.GENOME_ID, Fixtures.CHROMOSOME);
+    }
+
+    @Benchmark
+    public PackedSequence fetchChromosomeSequencePacked() throws IOException {
+        return coge.fetchChromosomeSequencePacked(Fixtures.GENOME_ID, Fixtures.CHROMOSOME);
+    }
+
+    @Benchmark
+    public BatchResult<Genome> fetchGenomes() {
+        return coge.fetchGenomes(batchIds);
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.coge.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * Decoding of recorded responses into model objects, with no I/O: JSON parsing alone, object construction alone, and both together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    String genomeText;
+    String featureText;
+    String searchText;
+    byte[] featuresBytes;
+    JSONObject genomeJson;
+    JSONObject featureJson;
+
+    @Setup
+    public void setup() throws IOException, JSONException {
+        genomeText = Fixtures.string(Fixtures.GENOME);
+        featureText = Fixtures.string(Fixtures.FEATURE);
+        searchText = Fixtures.string(Fixtures.SEARCH_GENOMES);
+        featuresBytes = Fixtures.bytes(Fixtures.FEATURES);
+        genomeJson = new JSONObject(genomeText);
+        featureJson = new JSONObject(featureText);
+    }
+
+    @Benchmark
+    public JSONObject parseGenome() throws JSONException {
+        return new JSONObject(genomeText);
+    }
+
+    @Benchmark
+    public Genome constructGenome() throws IOException, JSONException {
+        return new Genome(genomeJson);
+    }
+
+    @Benchmark
+    public Genome decodeGenome() throws IOException, JSONException {
+        return new Genome(new JSONObject(genomeText));
+    }
+
+    @Benchmark
+    public Feature constructFeature() throws IOException, JSONException {
+        return new Feature(featureJson);
+    }
+
+    @Benchmark
+    public Feature decodeFeature() throws IOException, JSONException {
+        return new Feature(new JSONObject(featureText));
+    }
+
+    /**
+     * The decoding done by searchGenome(): parse the response and construct each genome.
+     */
+    @Benchmark
+    public List<Genome> decodeGenomeSearch() throws IOException, JSONException {
+        List<Genome> genomes = new ArrayList<Genome>();
+        JSONArray ja = new JSONObject(searchText).getJSONArray("genomes");
+        for (int i=0; i<ja.length(); i++) genomes.add(new Genome(ja.getJSONObject(i)));
+        return genomes;
+    }
+
+    /**
+     * The decoding done by fetchGenomeFeatures(): pull-parse a features response one feature at a time.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int decodeGenomeFeatures() throws IOException {
+        int count = 0;
+        try (FeatureIterator it = new FeatureIterator(new ByteArrayInputStream(featuresBytes))) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.coge.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the CoGe API which answers the benchmarked endpoints with the recorded fixtures, held in memory, so that the end-to-end
+ * benchmarks measure the client rather than the network or the server. Any id is answered with the same record. Bodies are sent gzipped
+ * when the client accepts it, as CoGe does.
+ */
+class FixtureServer {
+
+    final Map<Pattern,String> routes = new LinkedHashMap<Pattern,String>();
+    final Map<String,byte[]> plain = new LinkedHashMap<String,byte[]>();
+    final Map<String,byte[]> gzipped = new LinkedHashMap<String,byte[]>();
+    HttpServer server;
+    ExecutorService executor;
+
+    FixtureServer() throws IOException {
+        route("/organisms/\\d+", Fixtures.ORGANISM);
+        route("/genomes/search/.*", Fixtures.SEARCH_GENOMES);
+        route("/genomes/\\d+", Fixtures.GENOME);
+        route("/genomes/\\d+/features/.*", Fixtures.FEATURES);
+        route("/genomes/\\d+/sequence/.*", Fixtures.SEQUENCE);
+        route("/features/\\d+", Fixtures.FEATURE);
+    }
+
+    void route(String path, String fixture) throws IOException {
+        routes.put(Pattern.compile(path), fixture);
+        plain.put(fixture, Fixtures.bytes(fixture));
+        byte[] gz = Fixtures.gzipped(fixture);
+        gzipped.put(fixture, gz!=null ? gz : gzip(plain.get(fixture)));
+    }
+
+    /**
+     * Start listening on a free loopback port, returning the base URL to give CoGe.
+     */
+    String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+                Thread t = new Thread(runnable, "fixture-server");
+                t.setDaemon(true);
+                return t;
+            });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return "http://"+server.getAddress().getHostString()+":"+server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String fixture = null;
+            for (Map.Entry<Pattern,String> route : routes.entrySet()) {
+                if (route.getKey().matcher(path).matches()) fixture = route.getValue();
+            }
+            if (fixture==null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = accept!=null && accept.contains("gzip");
+            byte[] body = gzip ? gzipped.get(fixture) : plain.get(fixture);
+            exchange.getResponseHeaders().set("Content-Type", fixture.endsWith(".json") ? "application/json" : "text/plain");
+            if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+            out.write(bytes);
+        }
+        return buf.toByteArray();
+    }
+
+}
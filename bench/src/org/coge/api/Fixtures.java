@@ -0,0 +1,62 @@
+package org.coge.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads the benchmark fixtures: generated responses, shaped like CoGe's at realistic sizes, kept in bench/fixtures, or the directory given by
+ * the coge.bench.fixtures system property.
+ * Large fixtures are stored gzipped, as name.gz, and can be had either way.
+ */
+final class Fixtures {
+
+    static final String GENOME = "genome.json";
+    static final String ORGANISM = "organism.json";
+    static final String FEATURE = "feature.json";
+    static final String SEARCH_GENOMES = "search-genomes.json";
+    static final String FEATURES = "features-gene.json";
+    static final String SEQUENCE = "sequence-Gm01.fa";
+
+    // the ids and names used in the generated fixtures; after RecordFixtures, set these to the ones it recorded
+    static final int GENOME_ID = 16888;
+    static final int FEATURE_ID = 311453;
+    static final String CHROMOSOME = "Gm01";
+    static final String FEATURE_TYPE = "gene";
+
+    private Fixtures() {
+    }
+
+    static Path dir() {
+        return Paths.get(System.getProperty("coge.bench.fixtures", "bench/fixtures"));
+    }
+
+    /**
+     * Return a fixture's bytes, uncompressed.
+     */
+    static byte[] bytes(String name) throws IOException {
+        Path plain = dir().resolve(name);
+        if (Files.exists(plain)) return Files.readAllBytes(plain);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(dir().resolve(name+".gz"))))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Return a fixture's bytes gzipped, as the server would send them with Content-Encoding: gzip, or null if it is only stored plain.
+     */
+    static byte[] gzipped(String name) throws IOException {
+        Path gz = dir().resolve(name+".gz");
+        return Files.exists(gz) ? Files.readAllBytes(gz) : null;
+    }
+
+    static String string(String name) throws IOException {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+
+}
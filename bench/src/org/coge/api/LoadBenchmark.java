@@ -0,0 +1,83 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The client under load against a FakeCoGeServer with realistic latency and a concurrency limit: batch fetches with and without adaptive
+ * concurrency, and streaming the genes and a chromosome of a large synthetic genome.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2, time=5)
+@Measurement(iterations=5, time=5)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"false", "true"})
+    boolean adaptiveConcurrency;
+
+    @Param({"20"})
+    long latencyMillis;
+
+    FakeCoGeServer server;
+    CoGe coge;
+    List<Integer> ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new FakeCoGeServer()
+            .setGenomes(200, 4)
+            .setGenomeSize(10, 20000000, 40)
+            .setLatency(latencyMillis/2, latencyMillis*3/2)
+            .setMaxConcurrentRequests(8);
+        coge = new CoGe(server.start());
+        coge.setParallelism(16);
+        coge.setAdaptiveConcurrency(adaptiveConcurrency);
+        coge.setCoalescing(false);
+        ids = new ArrayList<Integer>();
+        for (int id=1; id<=200; id++) ids.add(id);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println(server);
+        server.stop();
+    }
+
+    /**
+     * Fetch 200 genomes; failures, from requests the server rejected, are returned with the results.
+     */
+    @Benchmark
+    public BatchResult<Genome> fetchGenomes() {
+        return coge.fetchGenomes(ids);
+    }
+
+    @Benchmark
+    public long streamGenomeFeatures() throws IOException {
+        return coge.streamGenomeFeatures(1, "gene").count();
+    }
+
+    @Benchmark
+    public PackedSequence fetchChromosomeSequencePacked() throws IOException {
+        return coge.fetchChromosomeSequencePacked(1, "chr01");
+    }
+
+}
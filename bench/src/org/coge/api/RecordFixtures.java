@@ -0,0 +1,62 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import us.monoid.json.JSONObject;
+
+/**
+ * Records the benchmark fixtures from a live CoGe server, replacing those in the fixtures directory. The large responses, the features
+ * and the chromosome sequence, are stored gzipped. After recording, set the ids in Fixtures to the ones recorded.
+ *
+ * Usage: RecordFixtures base_url genome_id feature_id chromosome search_term [fixtures_dir]
+ */
+public class RecordFixtures {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length<5) {
+            System.err.println("Usage: RecordFixtures <base_url> <genome_id> <feature_id> <chromosome> <search_term> [fixtures_dir]");
+            System.exit(2);
+        }
+        String baseUrl = args[0];
+        String genomeId = args[1];
+        Path dir = args.length>5 ? Paths.get(args[5]) : Fixtures.dir();
+        Files.createDirectories(dir);
+        Transport transport = new HttpClientTransport();
+
+        record(transport, baseUrl+"/genomes/"+genomeId, dir.resolve(Fixtures.GENOME), false);
+        int organismId = new JSONObject(new String(Files.readAllBytes(dir.resolve(Fixtures.GENOME)), StandardCharsets.UTF_8)).getJSONObject("organism").getInt("id");
+        record(transport, baseUrl+"/organisms/"+organismId, dir.resolve(Fixtures.ORGANISM), false);
+        record(transport, baseUrl+"/features/"+args[2], dir.resolve(Fixtures.FEATURE), false);
+        record(transport, baseUrl+"/genomes/search/"+args[4].replaceAll(" ","%20"), dir.resolve(Fixtures.SEARCH_GENOMES), false);
+        record(transport, baseUrl+"/genomes/"+genomeId+"/features/"+Fixtures.FEATURE_TYPE, dir.resolve(Fixtures.FEATURES+".gz"), true);
+        record(transport, baseUrl+"/genomes/"+genomeId+"/sequence/"+args[3], dir.resolve(Fixtures.SEQUENCE+".gz"), true);
+    }
+
+    /**
+     * Save one response body, uncompressed on the wire, to a file, gzipping it if asked.
+     */
+    static void record(Transport transport, String url, Path file, boolean gzip) throws IOException {
+        Map<String,String> headers = new LinkedHashMap<String,String>();
+        headers.put("Accept-Encoding", "identity");
+        try (TransportResponse response = transport.execute("GET", url, headers, null)) {
+            if (response.getStatus()>=400) throw new IOException("Server returned HTTP response code: "+response.getStatus()+" for URL: "+url);
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".part");
+            try (InputStream in = response.getBody(); OutputStream out = gzip ? new GZIPOutputStream(Files.newOutputStream(temp)) : Files.newOutputStream(temp)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        System.out.println(file+"\t"+Files.size(file)+" bytes");
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.coge.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The sequence read loops over a recorded chromosome FASTA held in memory: reading it whole into a String, streaming it through a FastaReader,
+ * and packing it four bits per base.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class SequenceBenchmark {
+
+    byte[] fasta;
+
+    @Setup
+    public void setup() throws IOException {
+        fasta = Fixtures.bytes(Fixtures.SEQUENCE);
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        return CoGe.readString(new ByteArrayInputStream(fasta));
+    }
+
+    @Benchmark
+    public long readFasta() throws IOException {
+        return CoGe.readFasta(new ByteArrayInputStream(fasta), new FastaHandler() {
+                public void header(String header) {
+                }
+                public void sequence(byte[] buf, int off, int len) {
+                }
+                public void end() {
+                }
+            });
+    }
+
+    @Benchmark
+    public PackedSequence readPacked() throws IOException {
+        return CoGe.readPacked(new ByteArrayInputStream(fasta));
+    }
+
+}
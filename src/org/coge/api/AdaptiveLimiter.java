@@ -0,0 +1,159 @@
+package org.coge.api;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A concurrency limit which adapts to the server, in the style of TCP congestion control. Callers acquire a slot before a request and
+ * report its outcome when done. Successes raise the limit additively, by about one per limit's worth of responses, while the limit is in use.
+ * Latency is compared with the best latency seen recently, and when it climbs past TOLERANCE times that baseline the server is assumed to be queueing
+ * and the limit is cut by DECREASE. A dropped request (a timeout, connection failure, 429 or 503) cuts the limit by BACKOFF, at most once per
+ * round trip so a burst of failures from the same window counts once. Thread-safe.
+ */
+public class AdaptiveLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 64;
+
+    static final double TOLERANCE = 2.0;  // latency relative to the baseline taken as queueing
+    static final double DECREASE = 0.9;   // cut on queueing
+    static final double BACKOFF = 0.5;    // cut on a drop
+    static final double SMOOTHING = 0.2;  // weight of a new latency sample
+    static final int WINDOW = 250;        // samples per baseline window
+
+    final int minLimit;
+    final int maxLimit;
+    double limit;
+    int inFlight;
+
+    double smoothedRtt;         // nanoseconds
+    long baselineRtt = Long.MAX_VALUE;
+    long windowMinRtt = Long.MAX_VALUE;
+    int windowSamples;
+    long lastDecrease;
+
+    long successes;
+    long drops;
+
+    /**
+     * Construct with the default initial, minimum and maximum limits.
+     */
+    public AdaptiveLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit<1 || maxLimit<minLimit || initialLimit<minLimit || initialLimit>maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1<=min<=initial<=max: "+minLimit+","+initialLimit+","+maxLimit);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Wait for a slot. Every acquire must be followed by exactly one of onSuccess, onDropped or onIgnored.
+     */
+    public synchronized void acquire() throws InterruptedIOException {
+        try {
+            while (inFlight>=(int)limit) wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a request slot");
+        }
+        inFlight++;
+    }
+
+    /**
+     * Take a slot if one is free without waiting, returning true if one was taken.
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight>=(int)limit) return false;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Release a slot after a successful request which took the given time to respond.
+     */
+    public synchronized void onSuccess(long rttNanos) {
+        release();
+        successes++;
+        smoothedRtt = smoothedRtt==0 ? rttNanos : (1-SMOOTHING)*smoothedRtt+SMOOTHING*rttNanos;
+        windowMinRtt = Math.min(windowMinRtt, rttNanos);
+        baselineRtt = Math.min(baselineRtt, rttNanos);
+        if (++windowSamples==WINDOW) {
+            // let the baseline rise if the server has become slower for good
+            baselineRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        if (smoothedRtt>TOLERANCE*baselineRtt) {
+            decrease(DECREASE);
+        } else if (inFlight+1>=limit/2) {
+            limit = Math.min(maxLimit, limit+1/limit);
+        }
+    }
+
+    /**
+     * Release a slot after a request which failed in a way suggesting overload: a timeout, connection failure, 429 or 503.
+     */
+    public synchronized void onDropped() {
+        release();
+        drops++;
+        decrease(BACKOFF);
+    }
+
+    /**
+     * Release a slot without adjusting the limit, e.g. after a client error which says nothing about the server's load.
+     */
+    public synchronized void onIgnored() {
+        release();
+    }
+
+    /**
+     * Return the current limit on concurrent requests.
+     */
+    public synchronized int getLimit() {
+        return (int)limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getSuccesses() {
+        return successes;
+    }
+
+    public synchronized long getDrops() {
+        return drops;
+    }
+
+    /**
+     * Return the smoothed response time in milliseconds.
+     */
+    public synchronized double getLatencyMillis() {
+        return smoothedRtt/1e6;
+    }
+
+    public synchronized String toString() {
+        return "limit="+(int)limit+";inFlight="+inFlight+";successes="+successes+";drops="+drops+";latency="+String.format("%.1f", smoothedRtt/1e6)+"ms;";
+    }
+
+    void release() {
+        if (inFlight>0) inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Scale the limit down, unless it was already cut within the last round trip.
+     */
+    void decrease(double factor) {
+        long now = System.nanoTime();
+        if (lastDecrease!=0 && now-lastDecrease<smoothedRtt) return;
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit*factor);
+    }
+
+}
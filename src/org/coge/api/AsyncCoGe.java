@@ -0,0 +1,242 @@
+package org.coge.api;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous versions of the CoGe search, fetch and add calls, each returning a CompletableFuture completed on an executor.
+ * By default the executor starts a virtual thread per call when the JDK has them (21 and later), so thousands of outstanding calls cost
+ * no platform threads; on older JDKs it is a cached pool of daemon threads. Failures complete the future exceptionally with the
+ * CoGeException, IOException or JSONException thrown by the underlying call, wrapped in a CompletionException.
+ */
+public class AsyncCoGe implements AutoCloseable {
+
+    CoGe coge;
+    Executor executor;
+    ExecutorService ownedExecutor; // shut down by close()
+
+    /**
+     * Construct around a CoGe instance with the default executor.
+     */
+    public AsyncCoGe(CoGe coge) {
+        this.coge = coge;
+        this.ownedExecutor = defaultExecutor();
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * Construct around a CoGe instance with the given executor, which the caller remains responsible for shutting down.
+     */
+    public AsyncCoGe(CoGe coge, Executor executor) {
+        this.coge = coge;
+        this.executor = executor;
+    }
+
+    public CoGe getCoGe() {
+        return coge;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shut down the default executor, if this instance created it.
+     */
+    public void close() {
+        if (ownedExecutor!=null) ownedExecutor.shutdown();
+    }
+
+    ////////// Organism //////////
+
+    public CompletableFuture<List<Organism>> searchOrganism(String searchTerm) {
+        return submit(() -> coge.searchOrganism(searchTerm));
+    }
+
+    public CompletableFuture<Organism> fetchOrganism(int id) {
+        return submit(() -> coge.fetchOrganism(id));
+    }
+
+    public CompletableFuture<CoGeResponse> addOrganism(String name, String description) {
+        return submit(() -> coge.addOrganism(name, description));
+    }
+
+    ////////// Genome //////////
+
+    public CompletableFuture<List<Genome>> searchGenome(String searchTerm, boolean includeDeleted) {
+        return submit(() -> coge.searchGenome(searchTerm, includeDeleted));
+    }
+
+    public CompletableFuture<Genome> fetchGenome(int id) {
+        return submit(() -> coge.fetchGenome(id));
+    }
+
+    public CompletableFuture<String> fetchGenomeSequence(int id) {
+        return submit(() -> coge.fetchGenomeSequence(id));
+    }
+
+    public CompletableFuture<String> fetchGenomeSequence(int id, String chr, int start, int stop) {
+        return submit(() -> coge.fetchGenomeSequence(id, chr, start, stop));
+    }
+
+    public CompletableFuture<String> fetchChromosomeSequence(int id, String chr) {
+        return submit(() -> coge.fetchChromosomeSequence(id, chr));
+    }
+
+    public CompletableFuture<PackedSequence> fetchGenomeSequencePacked(int id, String chr, int start, int stop) {
+        return submit(() -> coge.fetchGenomeSequencePacked(id, chr, start, stop));
+    }
+
+    public CompletableFuture<PackedSequence> fetchChromosomeSequencePacked(int id, String chr) {
+        return submit(() -> coge.fetchChromosomeSequencePacked(id, chr));
+    }
+
+    public CompletableFuture<Long> readGenomeSequence(int id, FastaHandler handler) {
+        return submit(() -> coge.readGenomeSequence(id, handler));
+    }
+
+    public CompletableFuture<Long> readChromosomeSequence(int id, String chr, FastaHandler handler) {
+        return submit(() -> coge.readChromosomeSequence(id, chr, handler));
+    }
+
+    public CompletableFuture<Long> downloadGenomeSequence(int id, Path target, boolean gzip) {
+        return submit(() -> coge.downloadGenomeSequence(id, target, gzip));
+    }
+
+    public CompletableFuture<Long> downloadChromosomeSequence(int id, String chr, Path target, boolean gzip) {
+        return submit(() -> coge.downloadChromosomeSequence(id, chr, target, gzip));
+    }
+
+    public CompletableFuture<List<Feature>> fetchGenomeFeatures(int id, String type) {
+        return submit(() -> coge.fetchGenomeFeatures(id, type));
+    }
+
+    public CompletableFuture<FeatureTable> fetchGenomeFeatureTable(int id, String type) {
+        return submit(() -> coge.fetchGenomeFeatureTable(id, type));
+    }
+
+    public CompletableFuture<CoGeResponse> addGenome(Genome genome, String irodsPath) {
+        return submit(() -> coge.addGenome(genome, irodsPath));
+    }
+
+    public CompletableFuture<Boolean> updateGenome(Genome genome) {
+        return submit(() -> coge.updateGenome(genome));
+    }
+
+    public CompletableFuture<Boolean> deleteGenome(Genome genome) {
+        return submit(() -> coge.deleteGenome(genome));
+    }
+
+    ////////// Feature //////////
+
+    public CompletableFuture<List<Feature>> searchFeature(String searchTerm) {
+        return submit(() -> coge.searchFeature(searchTerm));
+    }
+
+    public CompletableFuture<Feature> fetchFeature(int id) {
+        return submit(() -> coge.fetchFeature(id));
+    }
+
+    public CompletableFuture<String> fetchFeatureSequence(int id) {
+        return submit(() -> coge.fetchFeatureSequence(id));
+    }
+
+    public CompletableFuture<PackedSequence> fetchFeatureSequencePacked(int id) {
+        return submit(() -> coge.fetchFeatureSequencePacked(id));
+    }
+
+    public CompletableFuture<CoGeResponse> addFeatures(Genome genome, String name, String description, String version, String sourceName, String irodsPath) {
+        return submit(() -> coge.addFeatures(genome, name, description, version, sourceName, irodsPath));
+    }
+
+    ////////// Experiment //////////
+
+    public CompletableFuture<List<Experiment>> searchExperiment(String searchTerm) {
+        return submit(() -> coge.searchExperiment(searchTerm));
+    }
+
+    public CompletableFuture<Experiment> fetchExperiment(int id) {
+        return submit(() -> coge.fetchExperiment(id));
+    }
+
+    ////////// Notebook //////////
+
+    public CompletableFuture<List<Notebook>> searchNotebook(String searchTerm) {
+        return submit(() -> coge.searchNotebook(searchTerm));
+    }
+
+    public CompletableFuture<Notebook> fetchNotebook(int id) {
+        return submit(() -> coge.fetchNotebook(id));
+    }
+
+    public CompletableFuture<Boolean> addItemsToNotebook(Notebook notebook, Map<Integer,String> items) {
+        return submit(() -> coge.addItemsToNotebook(notebook, items));
+    }
+
+    ////////// Group //////////
+
+    public CompletableFuture<List<Group>> searchGroup(String searchTerm) {
+        return submit(() -> coge.searchGroup(searchTerm));
+    }
+
+    public CompletableFuture<Group> fetchGroup(int id) {
+        return submit(() -> coge.fetchGroup(id));
+    }
+
+    ////////// DataStoreList //////////
+
+    public CompletableFuture<DataStoreList> listDataStore(String path) {
+        return submit(() -> coge.listDataStore(path));
+    }
+
+    ////////// Generic //////////
+
+    /**
+     * A blocking CoGe call.
+     */
+    interface Call<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * Run a blocking call on the executor.
+     */
+    <T> CompletableFuture<T> submit(Call<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.call();
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor);
+    }
+
+    /**
+     * Return a virtual-thread-per-task executor if the JDK provides one, otherwise a cached pool of daemon threads.
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                    final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "coge-async-"+count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.coge.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a bulk fetch: the fetched objects in the order their ids were given, with null wherever a fetch failed,
+ * and the failures keyed by id. A failed id does not abort the rest of the batch.
+ */
+public class BatchResult<T> {
+
+    List<Integer> ids;
+    List<T> results;
+    Map<Integer,Exception> failures;
+
+    BatchResult(List<Integer> ids, List<T> results, Map<Integer,Exception> failures) {
+        this.ids = ids;
+        this.results = results;
+        this.failures = failures;
+    }
+
+    /**
+     * Return the requested ids, in the order given.
+     */
+    public List<Integer> getIds() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Return the fetched objects in the order their ids were given, with null for each id which failed.
+     */
+    public List<T> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Return the object fetched for the i-th id, or null if it failed.
+     */
+    public T get(int i) {
+        return results.get(i);
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Return the exception thrown for each id which failed: an IOException, JSONException or CoGeException.
+     */
+    public Map<Integer,Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public String toString() {
+        return "size="+results.size()+";failures="+failures.keySet()+";";
+    }
+
+}
@@ -0,0 +1,433 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a set of genomes, each with its annotation sets, into CoGe. Up to maxConcurrentLoads genomes are loaded at once; a genome's annotation
+ * sets are submitted, concurrently, once its genome job has completed and the new genome id is known. Every outstanding job is polled from the
+ * run's scheduler thread, each at its own interval which starts at initialPollMillis, grows by BACKOFF while the job makes no progress up to
+ * maxPollMillis, and drops back when it does; a job not done within maxWaitMillis fails its load. A failed load is recorded in its LoadResult
+ * without stopping the others.
+ *
+ * The manifest read by readManifest() is tab-separated, one step per line, blank lines and lines starting with # ignored:
+ * <pre>
+ * genome      key  organism_id  name  version  source_name  sequence_type  restricted  irods_path  [description]
+ * annotation  genome_key  name  version  source_name  irods_path  [description]
+ * </pre>
+ */
+public class BulkLoader {
+
+    public static final int DEFAULT_MAX_CONCURRENT_LOADS = 4;
+    public static final long DEFAULT_INITIAL_POLL_MILLIS = 5000;
+    public static final long DEFAULT_MAX_POLL_MILLIS = 60000;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 24*60*60*1000L;
+    static final double BACKOFF = 1.5;
+    static final int MAX_POLL_ERRORS = 5; // consecutive failed polls before a job is given up on
+
+    CoGe coge;
+    int maxConcurrentLoads = DEFAULT_MAX_CONCURRENT_LOADS;
+    long initialPollMillis = DEFAULT_INITIAL_POLL_MILLIS;
+    long maxPollMillis = DEFAULT_MAX_POLL_MILLIS;
+    long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    PrintStream log;
+
+    /**
+     * Construct to load through the given CoGe instance, which must be authenticated.
+     */
+    public BulkLoader(CoGe coge) {
+        this.coge = coge;
+    }
+
+    public void setMaxConcurrentLoads(int maxConcurrentLoads) {
+        if (maxConcurrentLoads<1) throw new IllegalArgumentException("maxConcurrentLoads must be positive: "+maxConcurrentLoads);
+        this.maxConcurrentLoads = maxConcurrentLoads;
+    }
+
+    /**
+     * Set the first and longest intervals between polls of a job.
+     */
+    public void setPollInterval(long initialPollMillis, long maxPollMillis) {
+        if (initialPollMillis<1 || maxPollMillis<initialPollMillis) throw new IllegalArgumentException("poll intervals must satisfy 1<=initial<=max");
+        this.initialPollMillis = initialPollMillis;
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    /**
+     * Set a stream to report submissions and job completions to, or null for none.
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * Set the longest a job may take, from its submission, before its load is failed; CoGe is then left to finish or abandon it.
+     */
+    public void setMaxWait(long maxWaitMillis) {
+        if (maxWaitMillis<1) throw new IllegalArgumentException("maxWaitMillis must be positive: "+maxWaitMillis);
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Load the given genomes and their annotation sets, returning once every job has finished or failed. Each call has its own scheduler and
+     * workers, so runs may overlap.
+     *
+     * @return the outcome of each load, in the order given
+     */
+    public List<LoadResult> run(List<GenomeLoad> loads) throws InterruptedException {
+        Run run = new Run();
+        Semaphore permits = new Semaphore(maxConcurrentLoads);
+        List<CompletableFuture<LoadResult>> futures = new ArrayList<CompletableFuture<LoadResult>>();
+        try {
+            for (GenomeLoad load : loads) {
+                permits.acquire();
+                futures.add(run.load(load).whenComplete((result, ex) -> permits.release()));
+            }
+            List<LoadResult> results = new ArrayList<LoadResult>();
+            for (CompletableFuture<LoadResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException(ex.getCause()); // load() handles its own failures
+                }
+            }
+            return results;
+        } finally {
+            run.scheduler.shutdownNow();
+            run.workers.shutdownNow();
+        }
+    }
+
+    /**
+     * The executors and settings of one call to run().
+     */
+    class Run {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread t = new Thread(runnable, "coge-load-poll");
+                t.setDaemon(true);
+                return t;
+            });
+        final ExecutorService workers = Workers.newPool(Math.max(2, coge.getParallelism()), "coge-load");
+        final long initialPollMillis = BulkLoader.this.initialPollMillis;
+        final long maxPollMillis = BulkLoader.this.maxPollMillis;
+        final long maxWaitMillis = BulkLoader.this.maxWaitMillis;
+
+        /**
+         * Submit a genome, wait for its job, then submit its annotation sets and wait for theirs.
+         */
+        CompletableFuture<LoadResult> load(final GenomeLoad load) {
+            final LoadResult result = new LoadResult(load);
+            return call(() -> coge.addGenome(load.genome, load.irodsPath))
+                .thenCompose(response -> {
+                        log("submitted genome "+load.key+" as job "+response.getId());
+                        return track(response.getId());
+                    })
+                .thenCompose(job -> {
+                        result.genomeJob = job;
+                        log("genome "+load.key+" job "+job.getId()+" "+job.getStatus());
+                        if (!job.isCompleted()) throw new CompletionException(new IOException("genome job "+job.getId()+" "+job.getStatus()));
+                        result.genomeId = job.getResultId("genome");
+                        if (result.genomeId==0) throw new CompletionException(new IOException("genome job "+job.getId()+" returned no genome id"));
+                        load.genome.setId(result.genomeId);
+                        List<CompletableFuture<Void>> annotations = new ArrayList<CompletableFuture<Void>>();
+                        for (AnnotationLoad annotation : load.annotations) annotations.add(loadAnnotation(load, annotation, result));
+                        return CompletableFuture.allOf(annotations.toArray(new CompletableFuture<?>[0]));
+                    })
+                .handle((v, ex) -> {
+                        if (ex!=null) result.error = unwrap(ex);
+                        return result;
+                    });
+        }
+
+        /**
+         * Submit an annotation set and wait for its job, recording the outcome in the result.
+         */
+        CompletableFuture<Void> loadAnnotation(final GenomeLoad load, final AnnotationLoad annotation, final LoadResult result) {
+            return call(() -> coge.addFeatures(load.genome, annotation.name, annotation.description, annotation.version, annotation.sourceName, annotation.irodsPath))
+                .thenCompose(response -> {
+                        log("submitted annotation "+annotation.name+" for genome "+result.genomeId+" as job "+response.getId());
+                        return track(response.getId());
+                    })
+                .handle((job, ex) -> {
+                        if (job!=null) log("annotation "+annotation.name+" job "+job.getId()+" "+job.getStatus());
+                        Exception error = ex!=null ? unwrap(ex) : job.isCompleted() ? null : new IOException("annotation job "+job.getId()+" "+job.getStatus());
+                        result.setAnnotation(annotation, job, error);
+                        return null;
+                    });
+        }
+
+        /**
+         * Return a future completed with the job once it has finished, polling it with backoff on the run's scheduler, or failed once it has
+         * taken longer than maxWaitMillis.
+         */
+        CompletableFuture<Job> track(int jobId) {
+            CompletableFuture<Job> future = new CompletableFuture<Job>();
+            schedule(new Poll(jobId, future), initialPollMillis);
+            return future;
+        }
+
+        void schedule(final Poll poll, long delay) {
+            // poll once more at the deadline rather than past it
+            poll.delay = Math.max(1, Math.min(delay, TimeUnit.NANOSECONDS.toMillis(poll.deadline-System.nanoTime())));
+            // the scheduler only times the polls; the requests run on the workers
+            scheduler.schedule(() -> workers.execute(poll), poll.delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * One check of a job's status, rescheduling itself until the job is done or its wait has run out.
+         */
+        class Poll implements Runnable {
+            final int jobId;
+            final CompletableFuture<Job> future;
+            final long deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            long delay;
+            String progress;
+            int errors;
+
+            Poll(int jobId, CompletableFuture<Job> future) {
+                this.jobId = jobId;
+                this.future = future;
+            }
+
+            public void run() {
+                try {
+                    Job job = coge.fetchJob(jobId);
+                    errors = 0;
+                    if (job.isDone()) {
+                        future.complete(job);
+                        return;
+                    }
+                    if (System.nanoTime()-deadline>=0) {
+                        future.completeExceptionally(new IOException("job "+jobId+" still "+job.getStatus()+" after "+maxWaitMillis+" ms"));
+                        return;
+                    }
+                    String now = job.getStatus()+":"+job.getCompletedTaskCount();
+                    long next = now.equals(progress) ? Math.min(maxPollMillis, (long)(delay*BACKOFF)) : initialPollMillis;
+                    progress = now;
+                    schedule(this, next);
+                } catch (Exception ex) {
+                    if (++errors>=MAX_POLL_ERRORS || System.nanoTime()-deadline>=0) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        schedule(this, Math.min(maxPollMillis, (long)(delay*BACKOFF)));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Run a blocking call on the workers.
+         */
+        <T> CompletableFuture<T> call(final Call<T> call) {
+            return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return call.call();
+                    } catch (RuntimeException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, workers);
+        }
+    }
+
+    /**
+     * A blocking CoGe call.
+     */
+    interface Call<T> {
+        T call() throws Exception;
+    }
+
+    static Exception unwrap(Throwable ex) {
+        while (ex instanceof CompletionException && ex.getCause()!=null) ex = ex.getCause();
+        return ex instanceof Exception ? (Exception) ex : new RuntimeException(ex);
+    }
+
+    void log(String message) {
+        if (log!=null) log.println(message);
+    }
+
+    /**
+     * Read a manifest, in the format described above.
+     */
+    public static List<GenomeLoad> readManifest(Path manifest) throws IOException {
+        Map<String,GenomeLoad> loads = new LinkedHashMap<String,GenomeLoad>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            try {
+                if (fields[0].equals("genome")) {
+                    Genome genome = new Genome(fields[3], fields.length>9 ? fields[9] : "");
+                    genome.setOrganism(new Organism(Integer.parseInt(fields[2]), null, null));
+                    genome.setVersion(fields[4]);
+                    genome.setSourceName(fields[5]);
+                    genome.setSequenceType(new CoGeObject(0, fields[6]));
+                    genome.setRestricted(Boolean.parseBoolean(fields[7]));
+                    if (loads.containsKey(fields[1])) throw new IOException("duplicate genome key "+fields[1]);
+                    loads.put(fields[1], new GenomeLoad(fields[1], genome, fields[8]));
+                } else if (fields[0].equals("annotation")) {
+                    GenomeLoad load = loads.get(fields[1]);
+                    if (load==null) throw new IOException("annotation for unknown genome key "+fields[1]);
+                    load.addAnnotation(new AnnotationLoad(fields[2], fields.length>6 ? fields[6] : "", fields[3], fields[4], fields[5]));
+                } else {
+                    throw new IOException("unknown step "+fields[0]);
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+                throw new IOException(manifest+" line "+lineNumber+": malformed "+fields[0]+" line");
+            } catch (IOException ex) {
+                throw new IOException(manifest+" line "+lineNumber+": "+ex.getMessage());
+            }
+        }
+        return new ArrayList<GenomeLoad>(loads.values());
+    }
+
+    /**
+     * A genome to load, with the annotation sets to load onto it.
+     */
+    public static class GenomeLoad {
+        String key;
+        Genome genome;
+        String irodsPath;
+        List<AnnotationLoad> annotations = new ArrayList<AnnotationLoad>();
+
+        /**
+         * @param key a name for the load, used in reports
+         * @param genome the genome to add, with its organism, version, source name and sequence type set as for CoGe.addGenome()
+         * @param irodsPath the Data Store path of its FASTA
+         */
+        public GenomeLoad(String key, Genome genome, String irodsPath) {
+            this.key = key;
+            this.genome = genome;
+            this.irodsPath = irodsPath;
+        }
+
+        public GenomeLoad addAnnotation(AnnotationLoad annotation) {
+            annotations.add(annotation);
+            return this;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Genome getGenome() {
+            return genome;
+        }
+
+        public List<AnnotationLoad> getAnnotations() {
+            return Collections.unmodifiableList(annotations);
+        }
+    }
+
+    /**
+     * An annotation set to load onto a genome, as for CoGe.addFeatures().
+     */
+    public static class AnnotationLoad {
+        String name;
+        String description;
+        String version;
+        String sourceName;
+        String irodsPath;
+
+        public AnnotationLoad(String name, String description, String version, String sourceName, String irodsPath) {
+            this.name = name;
+            this.description = description;
+            this.version = version;
+            this.sourceName = sourceName;
+            this.irodsPath = irodsPath;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The outcome of a GenomeLoad: the genome's job and new id, and each annotation set's job or error.
+     */
+    public static class LoadResult {
+        GenomeLoad load;
+        Job genomeJob;
+        int genomeId;
+        Exception error;
+        Map<AnnotationLoad,Job> annotationJobs = new LinkedHashMap<AnnotationLoad,Job>();
+        Map<AnnotationLoad,Exception> annotationErrors = new LinkedHashMap<AnnotationLoad,Exception>();
+
+        LoadResult(GenomeLoad load) {
+            this.load = load;
+        }
+
+        synchronized void setAnnotation(AnnotationLoad annotation, Job job, Exception error) {
+            if (job!=null) annotationJobs.put(annotation, job);
+            if (error!=null) annotationErrors.put(annotation, error);
+        }
+
+        public GenomeLoad getLoad() {
+            return load;
+        }
+
+        /**
+         * Return the genome's finished job, or null if it was never submitted or couldn't be tracked.
+         */
+        public Job getGenomeJob() {
+            return genomeJob;
+        }
+
+        /**
+         * Return the id of the new genome, or 0 if it wasn't loaded.
+         */
+        public int getGenomeId() {
+            return genomeId;
+        }
+
+        /**
+         * Return the error which stopped the genome load, or null.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public synchronized Map<AnnotationLoad,Job> getAnnotationJobs() {
+            return new LinkedHashMap<AnnotationLoad,Job>(annotationJobs);
+        }
+
+        public synchronized Map<AnnotationLoad,Exception> getAnnotationErrors() {
+            return new LinkedHashMap<AnnotationLoad,Exception>(annotationErrors);
+        }
+
+        /**
+         * Return true if the genome and every annotation set loaded.
+         */
+        public synchronized boolean isSuccess() {
+            return error==null && annotationErrors.isEmpty() && annotationJobs.size()==load.annotations.size();
+        }
+
+        public synchronized String toString() {
+            String out = "genome="+load.key+";genomeId="+genomeId+";success="+isSuccess()+";";
+            if (error!=null) out += "error="+error.getMessage()+";";
+            for (Map.Entry<AnnotationLoad,Exception> entry : annotationErrors.entrySet()) {
+                out += "annotation."+entry.getKey().name+".error="+entry.getValue().getMessage()+";";
+            }
+            return out;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package org.coge.api;
+
+/**
+ * An immutable snapshot of a cache's hit, miss and eviction counts.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    public CacheStats(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the number of entries dropped to stay within the size bound or because they expired.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Return the number of entries held when the snapshot was taken.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return hits/(hits+misses), or 0 if there have been no requests.
+     */
+    public double getHitRate() {
+        long requests = hits+misses;
+        return requests==0 ? 0.0 : (double)hits/requests;
+    }
+
+    public String toString() {
+        return "hits="+hits+";misses="+misses+";evictions="+evictions+";size="+size+";hitRate="+String.format("%.3f", getHitRate())+";";
+    }
+
+}
@@ -1,20 +1,56 @@
 package org.coge.api;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import us.monoid.json.JSONArray;
 import us.monoid.json.JSONException;
 import us.monoid.json.JSONObject;
-import us.monoid.web.Content;
-import us.monoid.web.Resty;
-import us.monoid.web.JSONResource;
+import us.monoid.json.JSONTokener;
 
 /**
  * The workhorse core class to make REST calls againt a CoGe web service and instantiate the various objects.
@@ -26,16 +62,39 @@ public class CoGe {
     String baseUrl;
     String username;
     String token;
-    Resty resty;
+    TokenProvider tokenProvider;
+    Transport transport;
+    SequenceCache sequenceCache;
+    int parallelism = 8;
+    ObjectCache objectCache;
+    boolean compression = true;
+    TransferListener transferListener;
+    final AtomicLong responses = new AtomicLong();
+    final AtomicLong compressedResponses = new AtomicLong();
+    final AtomicLong wireBytes = new AtomicLong();
+    final AtomicLong decodedBytes = new AtomicLong();
+    boolean adaptiveConcurrency;
+    final ConcurrentHashMap<String,AdaptiveLimiter> limiters = new ConcurrentHashMap<String,AdaptiveLimiter>();
+    boolean coalescing = true;
+    final SingleFlight<String,JSONObject> jsonFlights = new SingleFlight<String,JSONObject>();
+    final SingleFlight<String,List<Feature>> featureFlights = new SingleFlight<String,List<Feature>>();
+    DiskCache diskCache;
+    MetricsRegistry metrics = new MetricsRegistry();
 
     /**
      * Construct given just a base URL, like https://genomevolution.org/coge/api/v1/
      * Used only for calls that don't require authentication.
      */
     public CoGe(String baseUrl) {
+        this(baseUrl, new HttpClientTransport());
+    }
+
+    /**
+     * Construct given a base URL and the transport to make requests with.
+     */
+    public CoGe(String baseUrl, Transport transport) {
         this.baseUrl = baseUrl;
-        this.resty = new Resty();
-        this.resty.identifyAsResty(); // why not?
+        this.transport = transport;
     }
 
     /**
@@ -43,10 +102,192 @@ public class CoGe {
      * Used for calls that require authentication.
      */
     public CoGe(String baseUrl, String username, String token) {
+        this(baseUrl, username, token, new HttpClientTransport());
+    }
+
+    /**
+     * Construct given a base URL, username, token and the transport to make requests with.
+     */
+    public CoGe(String baseUrl, String username, String token, Transport transport) {
         this.baseUrl = baseUrl;
         this.username = username;
         this.token = token;
-        this.resty = new Resty();
+        this.transport = transport;
+    }
+
+    /**
+     * Construct given a base URL, username and a provider of tokens, such as the TokenManager shared through CoGeParameters.getTokenManager(),
+     * which keeps them fresh. A request rejected with 401 Unauthorized is retried once with a refreshed token.
+     */
+    public CoGe(String baseUrl, String username, TokenProvider tokenProvider) {
+        this(baseUrl, username, null, new HttpClientTransport());
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * Set the provider of the tokens put on authenticated requests, used in place of the fixed token; set null to go back to the fixed token.
+     */
+    public void setTokenProvider(TokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    public TokenProvider getTokenProvider() {
+        return tokenProvider;
+    }
+
+    /**
+     * Set the transport used for all requests, e.g. a RestyTransport or an HttpClientTransport with custom timeouts.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Serve subsequence and chromosome sequence requests for the genomes held in the given cache from the cache; set null to always use the network.
+     */
+    public void setSequenceCache(SequenceCache sequenceCache) {
+        this.sequenceCache = sequenceCache;
+    }
+
+    public SequenceCache getSequenceCache() {
+        return sequenceCache;
+    }
+
+    /**
+     * Set the maximum number of concurrent requests a single call may make when it fans out, e.g. to fetch the genomes of a feature search.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism<1) throw new IllegalArgumentException("parallelism must be positive: "+parallelism);
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Cache the records read by the fetch methods (organisms, genomes, features, experiments, notebooks and groups) in the given cache;
+     * set null to disable caching. The update, delete and add methods invalidate the records they change.
+     */
+    public void setObjectCache(ObjectCache objectCache) {
+        this.objectCache = objectCache;
+    }
+
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    /**
+     * Ask for gzip or deflate compressed responses (the default) and decompress them as they are read; set false to request identity encoding.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set a listener to be told the wire and decoded byte counts of each response as its body is closed, or null for none.
+     */
+    public void setTransferListener(TransferListener transferListener) {
+        this.transferListener = transferListener;
+    }
+
+    public TransferListener getTransferListener() {
+        return transferListener;
+    }
+
+    /**
+     * Return the totals over every response body read and closed so far.
+     */
+    public TransferStats getTransferStats() {
+        return new TransferStats(responses.get(), compressedResponses.get(), wireBytes.get(), decodedBytes.get());
+    }
+
+    /**
+     * Limit the number of requests in flight to each endpoint family (genomes, features, irods, etc.) with an AdaptiveLimiter, which finds the
+     * highest concurrency the server sustains from response times and failures. A JSON request holds its slot until its body has been read; a
+     * streamed body, such as a sequence or a FeatureIterator, gives its slot back when the headers arrive, so its reader can make further calls
+     * without waiting on itself. Off by default; when on, parallelism only caps the threads a call fans out to and the limiters decide how many
+     * of them are sending.
+     */
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    public boolean getAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * Return the limiter for an endpoint family, the first path segment after the base URL, e.g. genomes. It is created with the default limits
+     * the first time it is needed; call setLimiter first to use others.
+     */
+    public AdaptiveLimiter getLimiter(String family) {
+        return limiters.computeIfAbsent(family, f -> new AdaptiveLimiter());
+    }
+
+    /**
+     * Set the limiter for an endpoint family, e.g. to start it higher or give it a lower ceiling.
+     */
+    public void setLimiter(String family, AdaptiveLimiter limiter) {
+        limiters.put(family, limiter);
+    }
+
+    /**
+     * Return the current limiters keyed by endpoint family.
+     */
+    public Map<String,AdaptiveLimiter> getLimiters() {
+        return new LinkedHashMap<String,AdaptiveLimiter>(limiters);
+    }
+
+    /**
+     * Coalesce concurrent identical GETs of JSON records (fetches, searches and feature lists), so that threads asking for the same URL at the same time
+     * share one request and one decoded result. On by default; the shared records must not be modified, as with the object cache.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    public boolean getCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Return the number of calls which were served by sharing a concurrent identical request rather than making their own.
+     */
+    public long getCoalescedRequests() {
+        return jsonFlights.getShared()+featureFlights.getShared();
+    }
+
+    /**
+     * Keep GET responses (records, searches, feature lists and sequences) in the given persistent cache, revalidating them with conditional
+     * requests; set null to disable it. It sits behind the object cache, if there is one.
+     */
+    public void setDiskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    public DiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Record per-endpoint request, error, latency, byte and JSON decode metrics in the given registry, which may be shared with other instances.
+     * Each instance starts with its own.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 
     ////////// Organism //////////
@@ -76,19 +317,28 @@ public class CoGe {
         return new Organism(json);
     }
 
+    /**
+     * Organism Bulk Fetch - fetch the given organisms concurrently, at most parallelism at a time.
+     *
+     * @param ids the organism ids
+     * @return the organisms in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Organism> fetchOrganisms(Collection<Integer> ids) {
+        return fetchAll("organisms", ids, Organism::new);
+    }
+
     /**
      * Organism Add
      * PUT [base_url/organisms]
      * Add a new organism. The response will contain the organism id if successful. The promised success flag is currently not present.
      */
     public CoGeResponse addOrganism(String name, String description) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/organisms?username="+username+"&token="+token;
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/organisms?username="+username+"&token="+token();
         JSONObject json = new JSONObject();
         json.put("name", name);
         json.put("description", description);
-        JSONResource resource = resty.json(url, Resty.put(Resty.content(json)));
-        JSONObject response = resource.object();
+        JSONObject response = sendJSON("PUT", url, json);
         if (isError(response)) throw new CoGeException(response);
         return new CoGeResponse(response);
     }
@@ -123,25 +373,29 @@ public class CoGe {
         return new Genome(json);
     }
 
+    /**
+     * Genome Bulk Fetch - fetch the given genomes concurrently, at most parallelism at a time, e.g. those listed by Organism.getGenomes().
+     *
+     * @param ids the genome ids
+     * @return the genomes in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Genome> fetchGenomes(Collection<Integer> ids) {
+        return fetchAll("genomes", ids, Genome::new);
+    }
+
     /**
      * Genome Fetch Sequence - grab the full sequence response (a FASTA)
-     * GET [​base_url]/genomes/​id/sequence
+     * GET [base_url]/genomes/id/sequence
      *
      * @param id the genome id
      */
     public String fetchGenomeSequence(int id) throws IOException, JSONException {
-        String url = baseUrl+"/genomes/"+id+"/sequence";
-        JSONResource jr = resty.json(url);
-        InputStream stream = jr.stream();
-        StringBuffer buffer = new StringBuffer();
-        int i = 0;
-        while ((i=stream.read())!=-1) buffer.append((char)i);
-        return buffer.toString();
+        return readString(openGenomeSequence(id));
     }
 
     /**
      * Genome fetch sequence - grab a subsequence (FASTA)
-     * GET [​base_url]/genomes/​id/sequence/​chr?start=x&stop=y
+     * GET [base_url]/genomes/id/sequence/chr?start=x&stop=y
      *
      * @param id the genome id
      * @param chr the chromosome name
@@ -149,30 +403,283 @@ public class CoGe {
      * @param stop the stop index
      */
     public String fetchGenomeSequence(int id, String chr, int start, int stop) throws IOException, JSONException {
-        String url = baseUrl+"/genomes/"+id+"/sequence/"+chr+"?start="+start+"&stop="+stop;
-        JSONResource jr = resty.json(url);
-        InputStream stream = jr.stream();
-        StringBuffer buffer = new StringBuffer();
-        int i = 0;
-        while ((i=stream.read())!=-1) buffer.append((char)i);
-        return buffer.toString();
+        return readString(openGenomeSequence(id, chr, start, stop));
     }
 
     /**
      * Genome fetch sequence - an entire chromosome (FASTA)
-     * GET [​base_url]/genomes/​id/sequence/​chr
+     * GET [base_url]/genomes/id/sequence/chr
      *
      * @param id the genome id
      * @param chr the chromosome name
      */
     public String fetchChromosomeSequence(int id, String chr) throws IOException, JSONException {
-        String url = baseUrl+"/genomes/"+id+"/sequence/"+chr;
-        JSONResource jr = resty.json(url);
-        InputStream stream = jr.stream();
-        StringBuffer buffer = new StringBuffer();
-        int i = 0;
-        while ((i=stream.read())!=-1) buffer.append((char)i);
-        return buffer.toString();
+        return readString(openChromosomeSequence(id, chr));
+    }
+
+    /**
+     * Genome fetch sequence - grab a subsequence as a PackedSequence, four bits per base.
+     * GET [base_url]/genomes/id/sequence/chr?start=x&stop=y
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param start the start index
+     * @param stop the stop index
+     */
+    public PackedSequence fetchGenomeSequencePacked(int id, String chr, int start, int stop) throws IOException {
+        if (sequenceCache!=null && sequenceCache.contains(id, chr)) return sequenceCache.getPackedSequence(id, chr, start, stop);
+        return readPacked(openGenomeSequence(id, chr, start, stop));
+    }
+
+    /**
+     * Genome fetch sequence - an entire chromosome as a PackedSequence, four bits per base.
+     * GET [base_url]/genomes/id/sequence/chr
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     */
+    public PackedSequence fetchChromosomeSequencePacked(int id, String chr) throws IOException {
+        if (sequenceCache!=null && sequenceCache.contains(id, chr)) return sequenceCache.getPackedSequence(id, chr, 1, sequenceCache.getLength(id, chr));
+        return readPacked(openChromosomeSequence(id, chr));
+    }
+
+    /**
+     * Open the full genome sequence response (a FASTA) as a buffered stream, which the caller must close.
+     * GET [base_url]/genomes/id/sequence
+     *
+     * @param id the genome id
+     */
+    public InputStream openGenomeSequence(int id) throws IOException {
+        return openStream(baseUrl+"/genomes/"+id+"/sequence");
+    }
+
+    /**
+     * Open a subsequence response (a FASTA) as a buffered stream, which the caller must close.
+     * GET [base_url]/genomes/id/sequence/chr?start=x&stop=y
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param start the start index
+     * @param stop the stop index
+     */
+    public InputStream openGenomeSequence(int id, String chr, int start, int stop) throws IOException {
+        if (sequenceCache!=null && sequenceCache.contains(id, chr)) return new ByteArrayInputStream(sequenceCache.getFasta(id, chr, start, stop));
+        return openStream(baseUrl+"/genomes/"+id+"/sequence/"+chr+"?start="+start+"&stop="+stop);
+    }
+
+    /**
+     * Open an entire chromosome response (a FASTA) as a buffered stream, which the caller must close.
+     * GET [base_url]/genomes/id/sequence/chr
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     */
+    public InputStream openChromosomeSequence(int id, String chr) throws IOException {
+        if (sequenceCache!=null && sequenceCache.contains(id, chr)) return new ByteArrayInputStream(sequenceCache.getFasta(id, chr, 1, sequenceCache.getLength(id, chr)));
+        return openStream(baseUrl+"/genomes/"+id+"/sequence/"+chr);
+    }
+
+    /**
+     * Stream the full genome FASTA to a handler in constant memory.
+     *
+     * @param id the genome id
+     * @param handler receives each header and the residues in chunks
+     * @return the total number of residues read
+     */
+    public long readGenomeSequence(int id, FastaHandler handler) throws IOException {
+        return readFasta(openGenomeSequence(id), handler);
+    }
+
+    /**
+     * Stream a subsequence FASTA to a handler in constant memory.
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param start the start index
+     * @param stop the stop index
+     * @param handler receives the header and the residues in chunks
+     * @return the total number of residues read
+     */
+    public long readGenomeSequence(int id, String chr, int start, int stop, FastaHandler handler) throws IOException {
+        return readFasta(openGenomeSequence(id, chr, start, stop), handler);
+    }
+
+    /**
+     * Stream an entire chromosome FASTA to a handler in constant memory.
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param handler receives the header and the residues in chunks
+     * @return the total number of residues read
+     */
+    public long readChromosomeSequence(int id, String chr, FastaHandler handler) throws IOException {
+        return readFasta(openChromosomeSequence(id, chr), handler);
+    }
+
+    /**
+     * Download the full genome FASTA straight to a file, without holding it in memory.
+     * GET [base_url]/genomes/id/sequence
+     *
+     * @param id the genome id
+     * @param target the file to write; it is replaced only once the download completes
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadGenomeSequence(int id, Path target) throws IOException {
+        return downloadGenomeSequence(id, target, false);
+    }
+
+    /**
+     * Download the full genome FASTA straight to a file, optionally gzipping it on the fly.
+     * GET [base_url]/genomes/id/sequence
+     *
+     * @param id the genome id
+     * @param target the file to write; it is replaced only once the download completes
+     * @param gzip set true to gzip the FASTA as it is written
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadGenomeSequence(int id, Path target, boolean gzip) throws IOException {
+        return download(openGenomeSequence(id), target, gzip);
+    }
+
+    /**
+     * Download an entire chromosome FASTA straight to a file.
+     * GET [base_url]/genomes/id/sequence/chr
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param target the file to write; it is replaced only once the download completes
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadChromosomeSequence(int id, String chr, Path target) throws IOException {
+        return downloadChromosomeSequence(id, chr, target, false);
+    }
+
+    /**
+     * Download an entire chromosome FASTA straight to a file, optionally gzipping it on the fly.
+     * GET [base_url]/genomes/id/sequence/chr
+     *
+     * @param id the genome id
+     * @param chr the chromosome name
+     * @param target the file to write; it is replaced only once the download completes
+     * @param gzip set true to gzip the FASTA as it is written
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadChromosomeSequence(int id, String chr, Path target, boolean gzip) throws IOException {
+        return download(openChromosomeSequence(id, chr), target, gzip);
+    }
+
+    /**
+     * Download a genome's chromosomes concurrently and reassemble them, in order, into one FASTA file.
+     * GET [base_url]/genomes/id/sequence/chr for each chromosome
+     *
+     * @param genome the genome, which must list its chromosomes
+     * @param target the file to write; it is replaced only once all chromosomes have been downloaded
+     * @param gzip set true to gzip the FASTA as it is written
+     * @param threads the maximum number of concurrent chromosome downloads
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadGenomeSequence(Genome genome, Path target, boolean gzip, int threads) throws CoGeException, IOException, JSONException {
+        return downloadGenomeSequence(genome.getId(), requireChromosomes(genome), target, gzip, threads);
+    }
+
+    /**
+     * Download the given chromosomes concurrently and reassemble them, in the given order, into one FASTA file.
+     * Each chromosome is written (and gzipped, if requested) by its worker into a temporary file, which is appended to the target as soon as
+     * all chromosomes ahead of it are done; gzip members concatenate into a valid gzip file so compression runs in parallel too.
+     *
+     * @param id the genome id
+     * @param chromosomes the chromosome names, in the order they should appear in the target
+     * @param target the file to write; it is replaced only once all chromosomes have been downloaded
+     * @param gzip set true to gzip the FASTA as it is written
+     * @param threads the maximum number of concurrent chromosome downloads
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadGenomeSequence(final int id, List<String> chromosomes, Path target, final boolean gzip, int threads) throws IOException, JSONException {
+        final Path dir = target.toAbsolutePath().getParent();
+        Path part = createPartFile(target);
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        final List<Path> pieces = new ArrayList<Path>();
+        ExecutorService pool = Workers.newPool(Math.max(1, Math.min(threads, chromosomes.size())), "coge-chromosome");
+        long total = 0;
+        try {
+            for (final String chr : chromosomes) {
+                final Path piece = Files.createTempFile(dir, target.getFileName().toString()+"."+fileName(chr), ".part");
+                pieces.add(piece);
+                futures.add(pool.submit(new Callable<Long>() {
+                        public Long call() throws IOException {
+                            return download(openChromosomeSequence(id, chr), piece, gzip);
+                        }
+                    }));
+            }
+            FileChannel out = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                for (int i=0; i<futures.size(); i++) {
+                    total += Workers.get(futures.get(i));
+                    FileChannel in = FileChannel.open(pieces.get(i), StandardOpenOption.READ);
+                    try {
+                        long size = in.size();
+                        long pos = 0;
+                        while (pos<size) pos += in.transferTo(pos, size-pos, out);
+                    } finally {
+                        in.close();
+                    }
+                    Files.delete(pieces.get(i));
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // a piece still being written would outlive its deletion
+            Workers.shutdown(pool);
+            Files.deleteIfExists(part);
+            for (Path piece : pieces) Files.deleteIfExists(piece);
+        }
+        return total;
+    }
+
+    /**
+     * Download a genome's chromosomes concurrently into one FASTA file per chromosome, named chr.fa (or chr.fa.gz) in the given directory.
+     *
+     * @param genome the genome, which must list its chromosomes
+     * @param dir the directory to write the chromosome files to
+     * @param gzip set true to gzip each FASTA as it is written
+     * @param threads the maximum number of concurrent chromosome downloads
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadChromosomeSequences(Genome genome, Path dir, boolean gzip, int threads) throws CoGeException, IOException, JSONException {
+        return downloadChromosomeSequences(genome.getId(), requireChromosomes(genome), dir, gzip, threads);
+    }
+
+    /**
+     * Download the given chromosomes concurrently into one FASTA file per chromosome, named chr.fa (or chr.fa.gz) in the given directory.
+     *
+     * @param id the genome id
+     * @param chromosomes the chromosome names
+     * @param dir the directory to write the chromosome files to
+     * @param gzip set true to gzip each FASTA as it is written
+     * @param threads the maximum number of concurrent chromosome downloads
+     * @return the number of bytes of FASTA downloaded
+     */
+    public long downloadChromosomeSequences(final int id, List<String> chromosomes, Path dir, final boolean gzip, int threads) throws IOException, JSONException {
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        ExecutorService pool = Workers.newPool(Math.max(1, Math.min(threads, chromosomes.size())), "coge-chromosome");
+        long total = 0;
+        try {
+            for (final String chr : chromosomes) {
+                final Path target = dir.resolve(fileName(chr)+(gzip ? ".fa.gz" : ".fa"));
+                futures.add(pool.submit(new Callable<Long>() {
+                        public Long call() throws IOException {
+                            return download(openChromosomeSequence(id, chr), target, gzip);
+                        }
+                    }));
+            }
+            for (Future<Long> future : futures) total += Workers.get(future);
+        } finally {
+            // no download may still be writing its part file once this returns
+            Workers.shutdown(pool);
+        }
+        return total;
     }
 
     /**
@@ -182,23 +689,87 @@ public class CoGe {
      * @param id the genome id
      * @param type the feature type (e.g. gene)
      */
-    public List<Feature> fetchGenomeFeatures(int id, String type) throws IOException, JSONException {
-        String url = baseUrl+"/genomes/"+id+"/features/"+type;
-        List<JSONObject> jsons = new ArrayList<JSONObject>();
-        JSONResource jr  = resty.json(url);
-        JSONObject jo = jr.object();
-        if (id==jo.getInt("id")) {
-            JSONArray ja = jo.getJSONArray("features");
-            ArrayList<Feature> features = new ArrayList<Feature>();
-            for (int i=0; i<ja.length(); i++) {
-                features.add(new Feature(ja.getJSONObject(i)));
-            }
+    public List<Feature> fetchGenomeFeatures(final int id, final String type) throws IOException, JSONException {
+        if (!coalescing) return readGenomeFeatures(id, type);
+        List<Feature> features = featureFlights.execute(id+"/"+type, () -> readGenomeFeatures(id, type));
+        return features==null ? null : new ArrayList<Feature>(features);
+    }
+
+    /**
+     * Read the features of the given type into a list, or return null if the response is not for the given genome.
+     */
+    List<Feature> readGenomeFeatures(int id, String type) throws IOException, JSONException {
+        ArrayList<Feature> features = new ArrayList<Feature>();
+        FeatureIterator it = iterateGenomeFeatures(id, type);
+        try {
+            while (it.hasNext()) features.add(it.next());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            it.close();
+        }
+        if (id==it.getGenomeId()) {
             return features;
         } else {
             return null;
         }
     }
 
+    /**
+     * Genome fetch features - load the features of the given type into a compact FeatureTable, decoding them one at a time.
+     * GET [base_url]/genomes/id/features/type
+     *
+     * @param id the genome id
+     * @param type the feature type (e.g. gene)
+     */
+    public FeatureTable fetchGenomeFeatureTable(int id, String type) throws IOException {
+        FeatureTable table = new FeatureTable(id);
+        FeatureIterator it = iterateGenomeFeatures(id, type);
+        try {
+            table.addAll(it);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            it.close();
+        }
+        table.trimToSize();
+        return table;
+    }
+
+    /**
+     * Genome fetch features - iterate the features of the given type as they are read off the wire, in constant memory.
+     * GET [base_url]/genomes/id/features/type
+     *
+     * @param id the genome id
+     * @param type the feature type (e.g. gene)
+     * @return an iterator which should be closed if not read to the end, and which throws a CoGe error met part way as described in FeatureIterator
+     */
+    public FeatureIterator iterateGenomeFeatures(int id, String type) throws IOException {
+        try {
+            return new FeatureIterator(openStream(baseUrl+"/genomes/"+id+"/features/"+type));
+        } catch (StatusException ex) {
+            throw ex.toCoGeException();
+        }
+    }
+
+    /**
+     * Genome fetch features - stream the features of the given type as they are read off the wire, in constant memory.
+     * GET [base_url]/genomes/id/features/type
+     *
+     * @param id the genome id
+     * @param type the feature type (e.g. gene)
+     * @return a sequential stream which should be closed if not consumed to the end
+     */
+    public Stream<Feature> streamGenomeFeatures(int id, String type) throws IOException {
+        final FeatureIterator it = iterateGenomeFeatures(id, type);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED|Spliterator.NONNULL), false)
+            .onClose(new Runnable() {
+                    public void run() {
+                        it.closeQuietly();
+                    }
+                });
+    }
+
 
     /**
      * Genome Add
@@ -208,8 +779,8 @@ public class CoGe {
      * @param irodsPath the path to the FASTA file on the iRODS DataStore (it can be gzipped).
      */
     public CoGeResponse addGenome(Genome genome, String irodsPath) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/genomes?username="+username+"&token="+token;
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/genomes?username="+username+"&token="+token();
         JSONObject json = new JSONObject();
         json.put("organism_id", genome.getOrganism().getId());
         JSONObject metadata = new JSONObject();
@@ -226,9 +797,9 @@ public class CoGe {
         source.put("path", irodsPath);
         sourceData.put(source);
         json.put("source_data", sourceData);
-        JSONResource resource = resty.json(url, Resty.put(Resty.content(json)));
-        JSONObject response = resource.object();
+        JSONObject response = sendJSON("PUT", url, json);
         if (isError(response)) throw new CoGeException(response);
+        invalidate("organisms", genome.getOrganism().getId());
         return new CoGeResponse(response);
     }
 
@@ -239,8 +810,8 @@ public class CoGe {
      * @param genome the genome instance which is used to update its CoGe version; id is essential, other fields are updated if populated.
      */
     public boolean updateGenome(Genome genome) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/genomes/"+genome.getId()+"?username="+username+"&token="+token;
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/genomes/"+genome.getId()+"?username="+username+"&token="+token();
         JSONObject json = new JSONObject();
         if (genome.getOrganism()!=null) json.put("organism_id", genome.getOrganism().getId());
         JSONObject metadata = new JSONObject();
@@ -251,8 +822,9 @@ public class CoGe {
         if (genome.getSequenceType()!=null) metadata.put("sequence_type", genome.getSequenceType());
         metadata.put("restricted", genome.isRestricted()); // always set, may be default
         json.put("metadata", metadata);
-        JSONResource resource = resty.json(url, Resty.content(json));
-        JSONObject response = resource.object();
+        JSONObject response = sendJSON("POST", url, json);
+        invalidate("genomes", genome.getId());
+        if (genome.getOrganism()!=null) invalidate("organisms", genome.getOrganism().getId());
         if (isError(response)) throw new CoGeException(response);
         CoGeResponse cogeResponse = new CoGeResponse(response);
         return cogeResponse.getSuccess();
@@ -265,11 +837,11 @@ public class CoGe {
      * @param genome the genome to delete from CoGe. Only the id is used.
      */
     public boolean deleteGenome(Genome genome) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/genomes/"+genome.getId()+"?username="+username+"&token="+token;
-        System.out.println("DELETE URL:"+url);
-        JSONResource resource = resty.json(url, Resty.delete());
-        JSONObject response = resource.object();
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/genomes/"+genome.getId()+"?username="+username+"&token="+token();
+        JSONObject response = sendJSON("DELETE", url, null);
+        invalidate("genomes", genome.getId());
+        if (genome.getOrganism()!=null) invalidate("organisms", genome.getOrganism().getId());
         if (isError(response)) throw new CoGeException(response);
         CoGeResponse cogeResponse = new CoGeResponse(response);
         return cogeResponse.getSuccess();
@@ -305,23 +877,20 @@ public class CoGe {
      * @param searchTerm a text string to search on
      */
     public List<Feature> searchFeature(String searchTerm) throws IOException, JSONException {
-        List<Feature> features = new ArrayList<Feature>();
+        List<JSONObject> jsons = new ArrayList<JSONObject>();
         String url = baseUrl+"/features/search/"+searchTerm.replaceAll(" ","%20"); // should use a special-purpose method for this
-        JSONResource jr  = resty.json(url);
-        JSONObject jo = jr.object();
+        JSONObject jo = getRecord(url);
         Iterator<String> joit = jo.keys();
         while (joit.hasNext()) {
             String jkey = joit.next();
             if (jkey.equals("features")) {
                 JSONArray ja = jo.getJSONArray(jkey);
                 for (int i=0; i<ja.length(); i++) {
-                    JSONObject json = ja.getJSONObject(i);
-                    Feature f = new Feature(json, this);
-                    features.add(f);
+                    jsons.add(ja.getJSONObject(i));
                 }
             }
         }
-        return features;
+        return decodeFeatures(jsons);
     }
 
     /**
@@ -329,26 +898,99 @@ public class CoGe {
      * GET [base_url/features/id]
      */
     public Feature fetchFeature(int id)  throws IOException, JSONException {
-        String url = baseUrl+"/features/"+id;
-        JSONResource jr = resty.json(url);
-        JSONObject json = jr.object();
-        return new Feature(json, this);
+        JSONObject json = fetch("features", id);
+        List<JSONObject> jsons = new ArrayList<JSONObject>();
+        jsons.add(json);
+        return decodeFeatures(jsons).get(0);
+    }
+
+    /**
+     * Decode features along with their genomes, fetching each distinct genome only once and the distinct genomes concurrently.
+     */
+    List<Feature> decodeFeatures(List<JSONObject> jsons) throws IOException, JSONException {
+        Set<Integer> genomeIds = new LinkedHashSet<Integer>();
+        for (JSONObject json : jsons) {
+            int gid = Feature.getGenomeId(json);
+            if (gid!=0) genomeIds.add(gid);
+        }
+        Map<Integer,Genome> genomes = fetchGenomeMap(genomeIds);
+        List<Feature> features = new ArrayList<Feature>();
+        for (JSONObject json : jsons) {
+            features.add(new Feature(json, genomes));
+        }
+        return features;
+    }
+
+    /**
+     * Feature Bulk Fetch - fetch the given features concurrently, at most parallelism at a time, then each of their distinct genomes.
+     * A feature whose genome can't be fetched is reported as failed with the genome's exception.
+     *
+     * @param ids the feature ids
+     * @return the features in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Feature> fetchFeatures(Collection<Integer> ids) {
+        BatchResult<JSONObject> jsons = fetchAll("features", ids, json -> json);
+        Map<Integer,Exception> failures = new LinkedHashMap<Integer,Exception>(jsons.failures);
+        int[] genomeIds = new int[jsons.size()];
+        Set<Integer> distinctGenomeIds = new LinkedHashSet<Integer>();
+        for (int i=0; i<jsons.size(); i++) {
+            if (jsons.get(i)==null) continue;
+            try {
+                genomeIds[i] = Feature.getGenomeId(jsons.get(i));
+                if (genomeIds[i]!=0) distinctGenomeIds.add(genomeIds[i]);
+            } catch (JSONException ex) {
+                failures.put(jsons.ids.get(i), ex);
+            }
+        }
+        BatchResult<Genome> genomes = fetchGenomes(distinctGenomeIds);
+        Map<Integer,Genome> genomeMap = new HashMap<Integer,Genome>();
+        for (int i=0; i<genomes.size(); i++) {
+            if (genomes.get(i)!=null) genomeMap.put(genomes.ids.get(i), genomes.get(i));
+        }
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i=0; i<jsons.size(); i++) {
+            int id = jsons.ids.get(i);
+            Feature feature = null;
+            if (jsons.get(i)!=null && !failures.containsKey(id)) {
+                Exception genomeFailure = genomes.failures.get(genomeIds[i]);
+                if (genomeFailure!=null) {
+                    failures.put(id, genomeFailure);
+                } else {
+                    try {
+                        feature = new Feature(jsons.get(i), genomeMap);
+                    } catch (IOException | JSONException ex) {
+                        failures.put(id, ex);
+                    }
+                }
+            }
+            features.add(feature);
+        }
+        return new BatchResult<Feature>(jsons.ids, features, failures);
+    }
+
+    /**
+     * Fetch the given genomes concurrently, at most parallelism at a time, returning them keyed by id; the first failure is thrown.
+     */
+    Map<Integer,Genome> fetchGenomeMap(Collection<Integer> ids) throws IOException, JSONException {
+        BatchResult<Genome> batch = fetchGenomes(ids);
+        for (Exception ex : batch.failures.values()) {
+            if (ex instanceof IOException) throw (IOException) ex;
+            if (ex instanceof JSONException) throw (JSONException) ex;
+            throw new IOException(ex.getMessage(), ex);
+        }
+        Map<Integer,Genome> genomes = new HashMap<Integer,Genome>();
+        for (int i=0; i<batch.size(); i++) genomes.put(batch.ids.get(i), batch.get(i));
+        return genomes;
     }
 
     /**
      * Feature Fetch Sequence - grab the feature's sequence.
-     * GET [​base_url/features/​id/sequence]
+     * GET [base_url/features/id/sequence]
      *
      * @param id the feature id
      */
     public String fetchFeatureSequence(int id) throws IOException, JSONException {
-        String url = baseUrl+"/features/"+id+"/sequence";
-        JSONResource jr = resty.json(url);
-        InputStream stream = jr.stream();
-        StringBuffer buffer = new StringBuffer();
-        int i = 0;
-        while ((i=stream.read())!=-1) buffer.append((char)i);
-        String seq = buffer.toString();
+        String seq = readString(openFeatureSequence(id));
         if (seq.contains("error")) {
             return CoGeException.getErrorMessage(new JSONObject(seq));
         } else {
@@ -356,6 +998,31 @@ public class CoGe {
         }
     }
 
+    /**
+     * Feature Fetch Sequence - grab the feature's sequence as a PackedSequence, four bits per base.
+     * GET [base_url/features/id/sequence]
+     *
+     * @param id the feature id
+     */
+    public PackedSequence fetchFeatureSequencePacked(int id) throws CoGeException, IOException, JSONException {
+        InputStream stream = openFeatureSequence(id);
+        stream.mark(1);
+        int first = stream.read();
+        stream.reset();
+        if (first=='{') throw new CoGeException(new JSONObject(readString(stream)));
+        return readPacked(stream);
+    }
+
+    /**
+     * Open the feature's sequence response as a buffered stream, which the caller must close.
+     * GET [base_url/features/id/sequence]
+     *
+     * @param id the feature id
+     */
+    public InputStream openFeatureSequence(int id) throws IOException {
+        return openStream(baseUrl+"/features/"+id+"/sequence");
+    }
+
     /**
      * Feature Add - load a new feature set onto a genome.
      * PUT [base_url/features]
@@ -368,8 +1035,8 @@ public class CoGe {
      * @param irodsPath the path to the GFF file containing the features (it can be gzipped)
      */
     public CoGeResponse addFeatures(Genome genome, String name, String description, String version, String sourceName, String irodsPath) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/features?username="+username+"&token="+token;
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/features?username="+username+"&token="+token();
         JSONObject json = new JSONObject();
         json.put("genome_id", genome.getId());
         JSONObject metadata = new JSONObject();
@@ -384,9 +1051,9 @@ public class CoGe {
         source.put("path", irodsPath);
         sourceData.put(source);
         json.put("source_data", sourceData);
-        JSONResource resource = resty.json(url, Resty.put(Resty.content(json)));
-        JSONObject response = resource.object();
+        JSONObject response = sendJSON("PUT", url, json);
         if (isError(response)) throw new CoGeException(response);
+        invalidate("genomes", genome.getId());
         return new CoGeResponse(response);
     }
 
@@ -417,6 +1084,16 @@ public class CoGe {
         return new Experiment(json);
     }
 
+    /**
+     * Experiment Bulk Fetch - fetch the given experiments concurrently, at most parallelism at a time, e.g. those listed by Genome.getExperiments().
+     *
+     * @param ids the experiment ids
+     * @return the experiments in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Experiment> fetchExperiments(Collection<Integer> ids) {
+        return fetchAll("experiments", ids, Experiment::new);
+    }
+
     ////////// Notebook //////////
 
     /**
@@ -444,6 +1121,16 @@ public class CoGe {
         return new Notebook(json);
     }
 
+    /**
+     * Notebook Bulk Fetch - fetch the given notebooks concurrently, at most parallelism at a time.
+     *
+     * @param ids the notebook ids
+     * @return the notebooks in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Notebook> fetchNotebooks(Collection<Integer> ids) {
+        return fetchAll("notebooks", ids, Notebook::new);
+    }
+
     /**
      * Notebook Add Items
      * POST [base_url/notebooks/id/items/add]
@@ -453,8 +1140,8 @@ public class CoGe {
      * @return true if the items add was successful
      */
     public boolean addItemsToNotebook(Notebook notebook, Map<Integer,String> items) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/notebooks/"+notebook.getId()+"/items/add?username="+username+"&token="+token;
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/notebooks/"+notebook.getId()+"/items/add?username="+username+"&token="+token();
         JSONArray ja = new JSONArray();
         for (Integer id : items.keySet()) {
             String type = items.get(id);
@@ -465,13 +1152,42 @@ public class CoGe {
         }
         JSONObject json = new JSONObject();
         json.put("items", ja);
-        JSONResource resource = resty.json(url, Resty.content(json));
-        JSONObject response = resource.object();
+        JSONObject response = sendJSON("POST", url, json);
+        invalidate("notebooks", notebook.getId());
         if (isError(response)) throw new CoGeException(response);
         CoGeResponse cogeResponse = new CoGeResponse(response);
         return cogeResponse.getSuccess();
     }
 
+    /**
+     * Notebook Resolve - fetch every genome and experiment in a notebook concurrently, at most parallelism at a time.
+     *
+     * @param notebook a fetched notebook
+     * @return the notebook's genomes and experiments, in notebook order, with the items which failed or are of other types
+     */
+    public NotebookContents resolveNotebook(Notebook notebook) {
+        List<Integer> genomeIds = notebook.getItemIds("genome");
+        List<Integer> experimentIds = notebook.getItemIds("experiment");
+        int distinct = new HashSet<Integer>(genomeIds).size()+new HashSet<Integer>(experimentIds).size();
+        ExecutorService pool = Workers.newPool(Math.max(1, Math.min(parallelism, distinct)), "coge-fetch");
+        try {
+            Map<Integer,Future<Genome>> genomes = submitAll(pool, "genomes", genomeIds, Genome::new);
+            Map<Integer,Future<Experiment>> experiments = submitAll(pool, "experiments", experimentIds, Experiment::new);
+            return new NotebookContents(notebook, collect(genomeIds, genomes), collect(experimentIds, experiments));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Notebook Resolve - fetch a notebook, then every genome and experiment in it concurrently.
+     *
+     * @param id the notebook id
+     */
+    public NotebookContents resolveNotebook(int id) throws CoGeException, IOException, JSONException {
+        return resolveNotebook(new Notebook(fetch("notebooks", id)));
+    }
+
     ////////// Group //////////
 
     /**
@@ -484,8 +1200,7 @@ public class CoGe {
         List<Group> groups = new ArrayList<Group>();
         String url = baseUrl+"/groups/search/"+searchTerm.replaceAll(" ","%20"); // should use a special-purpose method for this
         List<Group> objects = new ArrayList<Group>();
-        JSONResource jr  = resty.json(url);
-        JSONObject jo = jr.object();
+        JSONObject jo = getRecord(url);
         Iterator<String> joit = jo.keys();
         while (joit.hasNext()) {
             String jkey = joit.next();
@@ -515,6 +1230,60 @@ public class CoGe {
         return new Group(json);
     }
 
+    /**
+     * Group Bulk Fetch - fetch the given groups concurrently, at most parallelism at a time.
+     *
+     * @param ids the group ids
+     * @return the groups in the order of ids, with the ids which failed and why
+     */
+    public BatchResult<Group> fetchGroups(Collection<Integer> ids) {
+        return fetchAll("groups", ids, Group::new);
+    }
+
+    ////////// Job //////////
+
+    /**
+     * Job Fetch - get the status of a job, e.g. the load started by addGenome or addFeatures, whose id is in their response. Never cached.
+     * GET [base_url/jobs/id]
+     *
+     * @param id the job id
+     */
+    public Job fetchJob(int id) throws CoGeException, IOException, JSONException {
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/jobs/"+id+"?username="+username+"&token="+token();
+        return new Job(getRecord(url));
+    }
+
+    ////////// Lazy references //////////
+
+    /**
+     * Return an organism's genomes as a list which fetches them all in one concurrent batch when first accessed.
+     */
+    public LazyList<Genome> lazyGenomes(Organism organism) {
+        return new LazyList<Genome>(organism.getGenomes(), this::fetchGenomes);
+    }
+
+    /**
+     * Return a genome's experiments as a list which fetches them all in one concurrent batch when first accessed.
+     */
+    public LazyList<Experiment> lazyExperiments(Genome genome) {
+        return new LazyList<Experiment>(genome.getExperiments(), this::fetchExperiments);
+    }
+
+    /**
+     * Return a notebook's genome items as a list which fetches them all in one concurrent batch when first accessed.
+     */
+    public LazyList<Genome> lazyGenomes(Notebook notebook) {
+        return new LazyList<Genome>(notebook.getItemIds("genome"), this::fetchGenomes);
+    }
+
+    /**
+     * Return a notebook's experiment items as a list which fetches them all in one concurrent batch when first accessed.
+     */
+    public LazyList<Experiment> lazyExperiments(Notebook notebook) {
+        return new LazyList<Experiment>(notebook.getItemIds("experiment"), this::fetchExperiments);
+    }
+
     ////////// DataStoreList //////////
 
     /**
@@ -523,12 +1292,9 @@ public class CoGe {
      *
      */
     public DataStoreList listDataStore(String path) throws CoGeException, IOException, JSONException {
-        if (username==null || token==null) throw CoGeException.missingAuthException();
-        String url = baseUrl+"/irods/list/"+path+"?username="+username+"&token="+token;
-        JSONResource jr = resty.json(url);
-        JSONObject jo = jr.object();
-        if (isError(jo)) throw new CoGeException(jo);
-        return new DataStoreList(jo);
+        if (!hasAuth()) throw CoGeException.missingAuthException();
+        String url = baseUrl+"/irods/list/"+path+"?username="+username+"&token="+token();
+        return new DataStoreList(getRecord(url));
     }
 
     ////////// Generic //////////
@@ -543,8 +1309,7 @@ public class CoGe {
     protected List<JSONObject> search(String objKey, String searchTerm) throws IOException, JSONException {
         String url = baseUrl+"/"+objKey+"/search/"+searchTerm.replaceAll(" ","%20"); // should use a special-purpose method for this
         List<JSONObject> jsons = new ArrayList<JSONObject>();
-        JSONResource jr  = resty.json(url);
-        JSONObject jo = jr.object();
+        JSONObject jo = getRecord(url);
         Iterator<String> joit = jo.keys();
         while (joit.hasNext()) {
             String jkey = joit.next();
@@ -563,11 +1328,575 @@ public class CoGe {
      * @param objKey the key for the type of object to be fetched, e.g. genomes
      * @param id the object's id
      * @return a JSONObject describing the fetched object
+     * @throws CoGeException if the response is a CoGe error or an error status
      */
     protected JSONObject fetch(String objKey, int id) throws IOException, JSONException {
+        if (objectCache!=null) {
+            JSONObject cached = objectCache.get(objKey, id);
+            if (cached!=null) return cached;
+        }
         String url = baseUrl+"/"+objKey+"/"+id;
-        JSONResource jr = resty.json(url);
-        return jr.object();
+        JSONObject json = getRecord(url);
+        if (objectCache!=null) objectCache.put(objKey, id, json);
+        return json;
+    }
+
+    /**
+     * Decodes a fetched JSON record into an object.
+     */
+    interface Decoder<T> {
+        T decode(JSONObject json) throws IOException, JSONException;
+    }
+
+    /**
+     * Fetch and decode the given objects concurrently, at most parallelism at a time. Each distinct id is fetched once. An id whose fetch throws,
+     * or whose response is a CoGe error, is recorded as a failure without aborting the rest.
+     *
+     * @param objKey the key for the type of object to be fetched, e.g. genomes
+     * @param ids the objects' ids
+     * @param decoder decodes each fetched record
+     */
+    <T> BatchResult<T> fetchAll(String objKey, Collection<Integer> ids, Decoder<T> decoder) {
+        List<Integer> idList = new ArrayList<Integer>(ids);
+        Set<Integer> distinct = new LinkedHashSet<Integer>(idList);
+        if (distinct.isEmpty()) {
+            return new BatchResult<T>(idList, new ArrayList<T>(), new LinkedHashMap<Integer,Exception>());
+        } else if (distinct.size()==1) {
+            // no need for a pool
+            Integer id = idList.get(0);
+            Map<Integer,Exception> failures = new LinkedHashMap<Integer,Exception>();
+            T value = null;
+            try {
+                value = fetchTask(objKey, id, decoder).call();
+            } catch (Exception ex) {
+                failures.put(id, ex);
+            }
+            return new BatchResult<T>(idList, Collections.nCopies(idList.size(), value), failures);
+        }
+        ExecutorService pool = Workers.newPool(Math.max(1, Math.min(parallelism, distinct.size())), "coge-fetch");
+        try {
+            return collect(idList, submitAll(pool, objKey, distinct, decoder));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit a fetch of each distinct id to a pool, returning the futures keyed by id.
+     */
+    <T> Map<Integer,Future<T>> submitAll(ExecutorService pool, String objKey, Collection<Integer> ids, Decoder<T> decoder) {
+        Map<Integer,Future<T>> futures = new LinkedHashMap<Integer,Future<T>>();
+        for (Integer id : ids) {
+            if (!futures.containsKey(id)) futures.put(id, pool.submit(fetchTask(objKey, id, decoder)));
+        }
+        return futures;
+    }
+
+    /**
+     * Wait for the futures from submitAll and gather their results in the order of idList, recording the failures.
+     */
+    static <T> BatchResult<T> collect(List<Integer> idList, Map<Integer,Future<T>> futures) {
+        Map<Integer,T> fetched = new HashMap<Integer,T>();
+        Map<Integer,Exception> failures = new LinkedHashMap<Integer,Exception>();
+        for (Map.Entry<Integer,Future<T>> entry : futures.entrySet()) {
+            try {
+                fetched.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failures.put(entry.getKey(), new InterruptedIOException("interrupted waiting for CoGe response"));
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+                failures.put(entry.getKey(), (Exception) ex.getCause());
+            }
+        }
+        List<T> results = new ArrayList<T>(idList.size());
+        for (Integer id : idList) results.add(fetched.get(id));
+        return new BatchResult<T>(idList, results, failures);
+    }
+
+    /**
+     * Return a task fetching and decoding one object, throwing a CoGeException if the response is a CoGe error.
+     */
+    <T> Callable<T> fetchTask(final String objKey, final int id, final Decoder<T> decoder) {
+        return new Callable<T>() {
+            public T call() throws CoGeException, IOException, JSONException {
+                return decoder.decode(fetch(objKey, id));
+            }
+        };
+    }
+
+    /**
+     * Drop a record from the object cache, if there is one.
+     */
+    void invalidate(String objKey, int id) {
+        if (objectCache!=null) objectCache.invalidate(objKey, id);
+    }
+
+    /**
+     * Open a GET response body as a buffered stream, for the caller to read at its own pace. Under adaptive concurrency its slot is given back
+     * when the headers arrive, so a caller holding the stream open can make further requests to the same endpoint family.
+     *
+     * @param url the full API URL
+     */
+    InputStream openStream(String url) throws IOException {
+        return openStream(url, true);
+    }
+
+    /**
+     * Open a GET response body as a buffered stream.
+     *
+     * @param url the full API URL
+     * @param streamed true if the body is handed to the caller, false if it is read through at once and its slot can be held until it is closed
+     */
+    InputStream openStream(String url, boolean streamed) throws IOException {
+        TransportResponse response = execute("GET", url, null, null, streamed);
+        return new BufferedInputStream(response.getBody(), FastaReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * GET a JSON object.
+     *
+     * @param url the full API URL
+     */
+    JSONObject getJSON(final String url) throws IOException, JSONException {
+        if (!coalescing) return decodeJSON("GET", url, openStream(url, false));
+        return jsonFlights.execute(url, () -> decodeJSON("GET", url, openStream(url, false)));
+    }
+
+    /**
+     * GET a JSON record, throwing a CoGe error or an error status as a CoGeException.
+     *
+     * @param url the full API URL
+     */
+    JSONObject getRecord(String url) throws IOException, JSONException {
+        JSONObject json;
+        try {
+            json = getJSON(url);
+        } catch (StatusException ex) {
+            throw ex.toCoGeException();
+        }
+        if (isError(json)) throw new CoGeException(json);
+        return json;
+    }
+
+    /**
+     * Send a JSON object with the given method and return the JSON response.
+     *
+     * @param method PUT, POST or DELETE
+     * @param url the full API URL
+     * @param json the request body, or null for none
+     */
+    JSONObject sendJSON(String method, String url, JSONObject json) throws IOException, JSONException {
+        byte[] body = json==null ? null : json.toString().getBytes(StandardCharsets.UTF_8);
+        TransportResponse response = execute(method, url, "application/json", body, false);
+        return decodeJSON(method, url, new BufferedInputStream(response.getBody(), FastaReader.DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * Parse a JSON response and close it, recording the time spent parsing, less the time spent waiting on the stream, as the endpoint's decode time.
+     */
+    JSONObject decodeJSON(String method, String url, InputStream stream) throws IOException, JSONException {
+        TimedInputStream timed = new TimedInputStream(stream);
+        long start = System.nanoTime();
+        JSONObject json = readJSON(timed);
+        metrics.endpoint(endpoint(method, url)).decodeTime.record(System.nanoTime()-start-timed.nanos);
+        return json;
+    }
+
+    /**
+     * Send a request through the transport, serving a GET from the disk cache if it holds a fresh or revalidated copy. An error status is thrown
+     * as a StatusException, an IOException whose message is followed by the error body on a new line, as Resty did, so that CoGeException can
+     * extract the CoGe error message.
+     *
+     * @param method the HTTP method
+     * @param url the full API URL
+     * @param contentType the body's content type, or null if there is no body
+     * @param body the request body, or null
+     * @param streamed true if the response body is handed to the caller rather than read through at once
+     */
+    TransportResponse execute(String method, String url, String contentType, byte[] body, boolean streamed) throws IOException {
+        Map<String,String> headers = new LinkedHashMap<String,String>();
+        headers.put("Accept", "application/json");
+        if (contentType!=null) headers.put("Content-Type", contentType);
+        if (compression) headers.put("Accept-Encoding", "gzip, deflate");
+        // job status must always come from the server
+        if (diskCache==null || !method.equals("GET") || family(url).equals("jobs")) return send(method, url, headers, body, streamed);
+        DiskCache cache = diskCache;
+        DiskCache.Entry cached = cache.lookup(url);
+        if (cached==null) return cache(cache, url, send(method, url, headers, body, streamed));
+        boolean served = false;
+        try {
+            if (cache.isFresh(cached)) {
+                served = true;
+                return new TransportResponse(200, Collections.<String,List<String>>emptyMap(), cache.serve(cached, false));
+            }
+            if (cached.getETag()!=null) headers.put("If-None-Match", cached.getETag());
+            if (cached.getLastModified()!=null) headers.put("If-Modified-Since", cached.getLastModified());
+            TransportResponse response = send(method, url, headers, body, streamed);
+            if (response.getStatus()==304) {
+                response.close();
+                served = true;
+                return new TransportResponse(200, Collections.<String,List<String>>emptyMap(), cache.serve(cached, true));
+            }
+            return cache(cache, url, response);
+        } finally {
+            if (!served) cached.close();
+        }
+    }
+
+    /**
+     * Store a successful response in the disk cache as it is read, if it can be revalidated later or the cache has a time-to-live.
+     */
+    static TransportResponse cache(DiskCache cache, String url, TransportResponse response) throws IOException {
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        String cacheControl = response.getHeader("Cache-Control");
+        boolean noStore = cacheControl!=null && cacheControl.toLowerCase().contains("no-store");
+        if (response.getStatus()==200 && !noStore && (etag!=null || lastModified!=null || cache.ttlMillis>0)) {
+            response.setBody(cache.store(url, etag, lastModified, response.getBody()));
+        }
+        return response;
+    }
+
+    /**
+     * Send a request, retrying it once with a refreshed token if it was rejected with 401 Unauthorized and the token came from the token provider.
+     * A status other than 2xx or 304 Not Modified is thrown as a StatusException.
+     */
+    TransportResponse send(String method, String url, Map<String,String> headers, byte[] body, boolean streamed) throws IOException {
+        TransportResponse response = transmit(method, url, headers, body, streamed);
+        String rejected = response.getStatus()==401 && tokenProvider!=null ? tokenParameter(url) : null;
+        if (rejected!=null) {
+            // retry once with a fresh token
+            response.close();
+            String fresh = tokenProvider.refreshToken(rejected);
+            url = url.replace("token="+rejected, "token="+fresh);
+            response = transmit(method, url, headers, body, streamed);
+        }
+        int status = response.getStatus();
+        if ((status<200 || status>=300) && status!=304) throw new StatusException(status, url, readString(response.getBody()));
+        return response;
+    }
+
+    /**
+     * Make one request through the transport, under the endpoint family's limiter if adaptive concurrency is on, and wrap the body.
+     * A streamed response gives its slot back as soon as the headers arrive: its reader may call back into CoGe, and holding the slot
+     * until the body is closed would deadlock once the limit fell to the number of open streams.
+     */
+    TransportResponse transmit(String method, String url, Map<String,String> headers, byte[] body, boolean streamed) throws IOException {
+        AdaptiveLimiter limiter = adaptiveConcurrency ? getLimiter(family(url)) : null;
+        if (limiter!=null) limiter.acquire();
+        EndpointMetrics endpoint = metrics.endpoint(endpoint(method, url));
+        endpoint.requests.incrementAndGet();
+        long start = System.nanoTime();
+        TransportResponse response;
+        try {
+            response = transport.execute(method, url, headers, body);
+        } catch (IOException | RuntimeException ex) {
+            endpoint.errors.incrementAndGet();
+            if (limiter!=null) limiter.onDropped();
+            throw ex;
+        }
+        long rtt = System.nanoTime()-start;
+        endpoint.latency.record(rtt);
+        if (response.getStatus()>=400) endpoint.errors.incrementAndGet();
+        if (limiter!=null && streamed) {
+            release(limiter, response.getStatus(), rtt);
+        } else if (limiter!=null) {
+            response.setBody(releasing(response.getBody(), limiter, response.getStatus(), rtt));
+        }
+        try {
+            response.setBody(decode(url, response, endpoint));
+        } catch (IOException ex) {
+            response.close();
+            throw ex;
+        }
+        return response;
+    }
+
+    /**
+     * Return true if there is a username and a token or token provider to authenticate with.
+     */
+    boolean hasAuth() {
+        return username!=null && (token!=null || tokenProvider!=null);
+    }
+
+    /**
+     * Return the token for an authenticated request: the provider's, if there is one, otherwise the fixed token.
+     */
+    String token() throws IOException {
+        return tokenProvider!=null ? tokenProvider.acquireToken() : token;
+    }
+
+    /**
+     * Return the value of a URL's token parameter, or null if it has none.
+     */
+    static String tokenParameter(String url) {
+        int q = url.indexOf('?');
+        if (q<0) return null;
+        for (String param : url.substring(q+1).split("&")) {
+            if (param.startsWith("token=")) return param.substring(6);
+        }
+        return null;
+    }
+
+    /**
+     * Return the endpoint family of an API URL: the first path segment after the base URL, e.g. genomes.
+     */
+    String family(String url) {
+        String path = url.startsWith(baseUrl) ? url.substring(baseUrl.length()) : url;
+        int start = 0;
+        while (start<path.length() && path.charAt(start)=='/') start++;
+        int end = start;
+        while (end<path.length() && "/?#".indexOf(path.charAt(end))<0) end++;
+        return path.substring(start, end);
+    }
+
+    /**
+     * Return the endpoint of an API request for its metrics: the method and the path after the base URL with its variable parts replaced by
+     * placeholders, e.g. GET genomes/{id}/sequence/{chr}.
+     */
+    String endpoint(String method, String url) {
+        String path = url.startsWith(baseUrl) ? url.substring(baseUrl.length()) : url;
+        int end = path.length();
+        for (char c : new char[]{'?', '#'}) {
+            int i = path.indexOf(c);
+            if (i>=0 && i<end) end = i;
+        }
+        String[] segments = path.substring(0, end).replaceAll("^/+", "").split("/");
+        StringBuilder endpoint = new StringBuilder(method).append(' ').append(segments[0]);
+        for (int i=1; i<segments.length; i++) {
+            String previous = segments[i-1];
+            endpoint.append('/');
+            if (segments[0].equals("irods") && i==2) {
+                endpoint.append("{path}");
+                break;
+            } else if (previous.equals("search")) {
+                endpoint.append("{term}");
+                break;
+            } else if (i==3 && previous.equals("features")) {
+                endpoint.append("{type}");
+            } else if (i==3 && previous.equals("sequence")) {
+                // before the id test, as chromosomes are often numbered
+                endpoint.append("{chr}");
+            } else if (segments[i].matches("\\d+")) {
+                endpoint.append("{id}");
+            } else {
+                endpoint.append(segments[i]);
+            }
+        }
+        return endpoint.toString();
+    }
+
+    /**
+     * Wrap a response body to release its limiter slot when closed.
+     */
+    static InputStream releasing(InputStream body, final AdaptiveLimiter limiter, final int status, final long rttNanos) {
+        return new FilterInputStream(body) {
+            boolean closed;
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    release(limiter, status, rttNanos);
+                }
+            }
+        };
+    }
+
+    /**
+     * Release a limiter slot, reporting 429 and 503 as drops, other errors as neither success nor failure, and anything else as a success with
+     * the given response time.
+     */
+    static void release(AdaptiveLimiter limiter, int status, long rttNanos) {
+        if (status==429 || status==503) {
+            limiter.onDropped();
+        } else if (status>=400) {
+            limiter.onIgnored();
+        } else {
+            limiter.onSuccess(rttNanos);
+        }
+    }
+
+    /**
+     * Wrap a response body to decompress it according to its Content-Encoding and to count the bytes read before and after decompression.
+     * The counts are added to the transfer stats and the endpoint's metrics, and passed to the transfer listener, when the body is closed.
+     */
+    InputStream decode(final String url, TransportResponse response, final EndpointMetrics endpoint) throws IOException {
+        final String encoding = response.getHeader("Content-Encoding");
+        final CountingInputStream wire = new CountingInputStream(response.getBody());
+        InputStream decoded;
+        if (encoding==null || encoding.equalsIgnoreCase("identity")) {
+            decoded = wire;
+        } else if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            decoded = new GZIPInputStream(wire, FastaReader.DEFAULT_CHUNK_SIZE);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            decoded = inflate(wire);
+        } else {
+            wire.close();
+            throw new IOException("Unsupported Content-Encoding "+encoding+" for URL: "+url);
+        }
+        final boolean compressed = decoded!=wire;
+        return new CountingInputStream(decoded) {
+            boolean closed;
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    responses.incrementAndGet();
+                    if (compressed) compressedResponses.incrementAndGet();
+                    wireBytes.addAndGet(wire.getCount());
+                    endpoint.bytesReceived.addAndGet(wire.getCount());
+                    decodedBytes.addAndGet(count);
+                    TransferListener listener = transferListener;
+                    if (listener!=null) listener.transferred(url, compressed ? encoding : null, wire.getCount(), count);
+                }
+            }
+        };
+    }
+
+    /**
+     * Return a stream inflating a deflate-encoded body. HTTP specifies zlib-wrapped data but some servers send raw deflate, so sniff the zlib header.
+     */
+    static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        int b0 = pushback.read();
+        int b1 = b0<0 ? -1 : pushback.read();
+        if (b1>=0) pushback.unread(b1);
+        if (b0>=0) pushback.unread(b0);
+        boolean zlib = b1>=0 && (b0&0x0F)==8 && ((b0<<8)|b1)%31==0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pushback, inflater, FastaReader.DEFAULT_CHUNK_SIZE) {
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Parse a JSON object from a stream and close it.
+     */
+    static JSONObject readJSON(InputStream stream) throws IOException, JSONException {
+        try {
+            return new JSONObject(new JSONTokener(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+        } catch (JSONException ex) {
+            if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+            throw ex;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read a stream fully into a String, one byte per char as the responses are ASCII, and close it.
+     */
+    static String readString(InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(FastaReader.DEFAULT_CHUNK_SIZE);
+            byte[] buf = new byte[FastaReader.DEFAULT_CHUNK_SIZE];
+            int n;
+            while ((n=stream.read(buf))!=-1) out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Pack the residues of a FASTA stream and close it.
+     */
+    static PackedSequence readPacked(InputStream stream) throws IOException {
+        PackedSequence.Builder builder = new PackedSequence.Builder();
+        readFasta(stream, builder);
+        return builder.build();
+    }
+
+    /**
+     * Pass a FASTA stream to a handler and close it.
+     */
+    static long readFasta(InputStream stream, FastaHandler handler) throws IOException {
+        try {
+            return new FastaReader(stream).read(handler);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write a response stream to a file and close it. The body goes through a FileChannel transfer, or a GZIPOutputStream if gzip is set,
+     * into a temporary sibling file which is then moved onto the target, so a failed download never leaves a truncated target behind.
+     *
+     * @return the number of bytes read from the stream
+     */
+    static long download(InputStream stream, Path target, boolean gzip) throws IOException {
+        Path part = createPartFile(target);
+        long total = 0;
+        try {
+            ReadableByteChannel in = Channels.newChannel(stream);
+            FileChannel out = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                if (gzip) {
+                    GZIPOutputStream gz = new GZIPOutputStream(Channels.newOutputStream(out), FastaReader.DEFAULT_CHUNK_SIZE);
+                    byte[] buf = new byte[FastaReader.DEFAULT_CHUNK_SIZE];
+                    int n;
+                    while ((n=stream.read(buf))!=-1) {
+                        gz.write(buf, 0, n);
+                        total += n;
+                    }
+                    gz.finish();
+                } else {
+                    long n;
+                    while ((n=out.transferFrom(in, total, 1L<<24))>0) total += n;
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            stream.close();
+            Files.deleteIfExists(part);
+        }
+        return total;
+    }
+
+    /**
+     * Create an empty file beside a target, to be written and then moved over it. Unlike Files.createTempFile, which makes a file only its
+     * owner can read, it gets the default permissions, and the move carries them over to the target.
+     */
+    static Path createPartFile(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        while (true) {
+            Path part = dir.resolve(target.getFileName()+"."+Long.toHexString(ThreadLocalRandom.current().nextLong())+".part");
+            try {
+                return Files.createFile(part);
+            } catch (FileAlreadyExistsException ex) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * Return the genome's chromosome names, or throw a CoGeException if it doesn't list them.
+     */
+    static List<String> requireChromosomes(Genome genome) throws CoGeException {
+        if (genome.getChromosomes()==null || genome.getChromosomes().isEmpty()) {
+            throw new CoGeException("Error: genome "+genome.getId()+" does not list its chromosomes; supply the chromosome names.");
+        }
+        return genome.getChromosomes();
+    }
+
+    /**
+     * Return a chromosome name made safe for use as a file name.
+     */
+    static String fileName(String chr) {
+        return chr.replaceAll("[^A-Za-z0-9._-]", "_");
     }
 
     /**
@@ -576,8 +1905,7 @@ public class CoGe {
      * @param url the full API URL
      */
     void printResponse(String url) throws IOException, JSONException {
-        JSONResource jr  = resty.json(url);
-        JSONObject jo = jr.object();
+        JSONObject jo = getJSON(url);
         System.out.println(jo.toString());
     }
 
@@ -588,4 +1916,67 @@ public class CoGe {
         return json.has("error");
     }
     
+    /**
+     * An error status from the server, with the response body following the message on a new line as Resty had it.
+     */
+    static class StatusException extends IOException {
+        final int status;
+        final String body;
+
+        StatusException(int status, String url, String body) {
+            super("Server returned HTTP response code: "+status+" for URL: "+url+"\n"+body);
+            this.status = status;
+            this.body = body;
+        }
+
+        /**
+         * Return a CoGeException with the CoGe error message in the body, or the status and body if the body isn't one.
+         */
+        CoGeException toCoGeException() {
+            try {
+                return new CoGeException(new JSONObject(body));
+            } catch (JSONException ex) {
+                return new CoGeException("HTTP "+status+": "+body);
+            }
+        }
+    }
+
+    /**
+     * Counts the time spent in reads and close, i.e. waiting on the response rather than decoding it.
+     */
+    static class TimedInputStream extends FilterInputStream {
+        long nanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return in.read();
+            } finally {
+                nanos += System.nanoTime()-start;
+            }
+        }
+
+        public int read(byte[] buf, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return in.read(buf, off, len);
+            } finally {
+                nanos += System.nanoTime()-start;
+            }
+        }
+
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                in.close();
+            } finally {
+                nanos += System.nanoTime()-start;
+            }
+        }
+    }
+
 }
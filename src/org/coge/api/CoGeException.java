@@ -7,9 +7,10 @@ import us.monoid.json.JSONException;
 import us.monoid.json.JSONObject;
 
 /**
- * Wraps a JSON error message returned by the CoGe REST API.
+ * Wraps a JSON error message returned by the CoGe REST API, or an error status. An IOException, so that calls which declare only IOException
+ * can report CoGe errors.
  */
-public class CoGeException extends Exception {
+public class CoGeException extends IOException {
 
     /**
      * Instantiate from a string.
@@ -3,13 +3,13 @@ package org.coge.api;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import us.monoid.json.JSONException;
 import us.monoid.json.JSONObject;
-import us.monoid.web.FormContent;
-import us.monoid.web.Resty;
-import us.monoid.web.JSONResource;
 
 /**
  * Encapsulate the auth and other CoGe parameters in this handy object, which can be loaded from a properties file.
@@ -24,7 +24,10 @@ public class CoGeParameters {
     String tokenURL;
 
     // local instance vars
-    String token;
+    Transport transport = new HttpClientTransport();
+    volatile String token;
+    long tokenIssued;
+    TokenManager tokenManager;
     String tokenScope;
     String tokenType;
     int tokenExpiration;
@@ -75,30 +78,67 @@ public class CoGeParameters {
         return token;
     }
 
+    /**
+     * Set the transport used to request tokens; the default is an HttpClientTransport.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
     public boolean hasToken() {
         return token!=null;
     }
 
+    /**
+     * Return the TokenManager shared by everything using these parameters, which keeps the token refreshed; create it on first use.
+     */
+    public synchronized TokenManager getTokenManager() {
+        if (tokenManager==null) tokenManager = new TokenManager(this);
+        return tokenManager;
+    }
+
     /**
      * Initialize the token from the appropriate Agave end point given by tokenURL.
      */
     public void initializeToken() throws IOException, JSONException {
         // bail if not instantiated properly
         if (clientID==null || tokenURL==null) return;
-        
-        // set up the Resty request object
-        Resty resty = new Resty();
-        resty.identifyAsResty(); // why not?
-        resty.withHeader("Authorization", "Basic "+clientID);
-        FormContent content = Resty.form("grant_type=client_credentials");
+        update(requestToken());
+    }
+
+    /**
+     * Request a new token from the token end point and return the JSON response.
+     */
+    JSONObject requestToken() throws IOException, JSONException {
+        if (clientID==null || tokenURL==null) throw new IOException("coge.client.id and coge.token.url must be set to request a token");
+
+        // set up the request
+        Map<String,String> headers = new LinkedHashMap<String,String>();
+        headers.put("Accept", "application/json");
+        headers.put("Authorization", "Basic "+clientID);
+        headers.put("Content-Type", "application/x-www-form-urlencoded");
+        byte[] content = "grant_type=client_credentials".getBytes(StandardCharsets.UTF_8);
 
         // make the request
-        JSONResource resource = resty.json(tokenURL, content);
-        JSONObject json = resource.object();
+        TransportResponse response = transport.execute("POST", tokenURL, headers, content);
+        String body = CoGe.readString(response.getBody());
+        if (response.getStatus()>=400) throw new IOException("Server returned HTTP response code: "+response.getStatus()+" for URL: "+tokenURL+"\n"+body);
+        return new JSONObject(body);
+    }
+
+    /**
+     * Set the token fields from a token response.
+     */
+    synchronized void update(JSONObject json) throws JSONException {
         if (json.has("scope")) tokenScope = json.getString("scope");
         if (json.has("token_type")) tokenType = json.getString("token_type");
         if (json.has("expires_in")) tokenExpiration = json.getInt("expires_in");
         if (json.has("access_token")) token = json.getString("access_token");
+        tokenIssued = System.currentTimeMillis();
     }
 
 }
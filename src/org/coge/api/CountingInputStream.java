@@ -0,0 +1,44 @@
+package org.coge.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream which counts the bytes read through it.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    long count;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    public int read() throws IOException {
+        int b = in.read();
+        if (b>=0) count++;
+        return b;
+    }
+
+    public int read(byte[] buf, int off, int len) throws IOException {
+        int n = in.read(buf, off, len);
+        if (n>0) count += n;
+        return n;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import us.monoid.json.JSONException;
+
+/**
+ * Walks a Data Store directory tree, listing directories concurrently on a bounded pool and handing each matching file to a visitor as soon as
+ * its directory has been listed. Files can be filtered by name with globs, e.g. *.fa.gz, and whole subtrees pruned by directory name, so that
+ * only the directories which might hold wanted files are listed. A directory which can't be listed is recorded and skipped without stopping the walk.
+ */
+public class DataStoreCrawler {
+
+    /**
+     * Receives the entries found by a crawl. Called concurrently from the crawl threads, so implementations must be thread-safe.
+     */
+    public interface Visitor {
+        public void visit(DataStoreEntry entry);
+    }
+
+    CoGe coge;
+    int threads;
+    int maxDepth = Integer.MAX_VALUE;
+    List<PathMatcher> includes = new ArrayList<PathMatcher>();
+    List<PathMatcher> excludedDirectories = new ArrayList<PathMatcher>();
+    boolean visitDirectories;
+
+    /**
+     * Construct to crawl with the given CoGe instance, which must be authenticated, using as many threads as its parallelism.
+     */
+    public DataStoreCrawler(CoGe coge) {
+        this.coge = coge;
+        this.threads = coge.getParallelism();
+    }
+
+    /**
+     * Set the number of directories listed concurrently.
+     */
+    public DataStoreCrawler setThreads(int threads) {
+        if (threads<1) throw new IllegalArgumentException("threads must be positive: "+threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Set the depth below the root to descend to; the root's own entries are at depth 1.
+     */
+    public DataStoreCrawler setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Only visit files whose names match one of these globs, e.g. *.fa.gz and *.gff3.gz; with none, visit every file.
+     */
+    public DataStoreCrawler include(String... globs) {
+        for (String glob : globs) includes.add(FileSystems.getDefault().getPathMatcher("glob:"+glob));
+        return this;
+    }
+
+    /**
+     * Don't descend into directories whose names match one of these globs, e.g. *.synt1.
+     */
+    public DataStoreCrawler excludeDirectories(String... globs) {
+        for (String glob : globs) excludedDirectories.add(FileSystems.getDefault().getPathMatcher("glob:"+glob));
+        return this;
+    }
+
+    /**
+     * Also visit the directories walked, not just the files.
+     */
+    public DataStoreCrawler setVisitDirectories(boolean visitDirectories) {
+        this.visitDirectories = visitDirectories;
+        return this;
+    }
+
+    /**
+     * Walk the tree under root, passing each matching entry to the visitor, and return once every directory has been listed.
+     *
+     * @param root the Data Store path to start from, as given to CoGe.listDataStore()
+     * @param visitor receives the matching entries, concurrently
+     * @return the exception for each directory which couldn't be listed, keyed by path
+     */
+    public Map<String,Exception> crawl(String root, Visitor visitor) throws InterruptedException {
+        Walk walk = new Walk(root.startsWith("/"), visitor);
+        try {
+            walk.submit(root, 1);
+            walk.done.await();
+        } finally {
+            walk.pool.shutdownNow();
+        }
+        return new LinkedHashMap<String,Exception>(walk.errors);
+    }
+
+    /**
+     * Walk the tree under root and return the matching entries, throwing the first listing error if there was one.
+     */
+    public List<DataStoreEntry> crawl(String root) throws IOException, InterruptedException {
+        final List<DataStoreEntry> entries = Collections.synchronizedList(new ArrayList<DataStoreEntry>());
+        Map<String,Exception> errors = crawl(root, new Visitor() {
+                public void visit(DataStoreEntry entry) {
+                    entries.add(entry);
+                }
+            });
+        for (Map.Entry<String,Exception> error : errors.entrySet()) {
+            throw new IOException("Error listing "+error.getKey()+": "+error.getValue().getMessage(), error.getValue());
+        }
+        return entries;
+    }
+
+    boolean matches(List<PathMatcher> matchers, String name) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(Paths.get(name))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The state of one crawl.
+     */
+    class Walk {
+        final boolean absolute;
+        final Visitor visitor;
+        final ExecutorService pool = Workers.newPool(threads, "coge-crawl");
+        final AtomicInteger pending = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        final Set<String> listed = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+        final Map<String,Exception> errors = new ConcurrentHashMap<String,Exception>();
+
+        Walk(boolean absolute, Visitor visitor) {
+            this.absolute = absolute;
+            this.visitor = visitor;
+        }
+
+        /**
+         * List a directory on the pool, unless it already has been.
+         */
+        void submit(final String path, final int depth) {
+            if (!listed.add(path)) return;
+            pending.incrementAndGet();
+            pool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            list(path, depth);
+                        } catch (Exception ex) {
+                            errors.put(path, ex);
+                        } finally {
+                            if (pending.decrementAndGet()==0) done.countDown();
+                        }
+                    }
+                });
+        }
+
+        void list(String path, int depth) throws CoGeException, IOException, JSONException {
+            for (DataStoreEntry entry : coge.listDataStore(path).getEntries()) {
+                if (entry.isDirectory()) {
+                    if (matches(excludedDirectories, entry.getName())) continue;
+                    if (visitDirectories) visitor.visit(entry);
+                    if (depth<maxDepth && entry.getPath()!=null) {
+                        String child = entry.getPath();
+                        // follow the root's convention for a leading slash
+                        if (!absolute) while (child.startsWith("/")) child = child.substring(1);
+                        submit(child, depth+1);
+                    }
+                } else if (includes.isEmpty() || matches(includes, entry.getName())) {
+                    visitor.visit(entry);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.coge.api;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An entry in a Data Store listing: a file or a directory, with the listing's other attributes available by key.
+ */
+public class DataStoreEntry {
+
+    String name;
+    String path;
+    String type;
+    Map<String,String> attributes;
+
+    /**
+     * Construct from a listing item, e.g. {"name":"cicar.CDCFrontier.gnm1/","order":"1","path":"/iplant/home/shared/...","type":"directory"}.
+     */
+    protected DataStoreEntry(Map<String,String> item) {
+        this.attributes = item;
+        this.type = item.get("type");
+        this.path = item.get("path");
+        String name = item.get("name");
+        // directory names come with a trailing slash
+        if (name!=null && name.endsWith("/")) name = name.substring(0, name.length()-1);
+        this.name = name;
+    }
+
+    /**
+     * Return the entry name, without the trailing slash the listing gives directories.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the full Data Store path.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Return the entry type, e.g. file or directory.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public boolean isDirectory() {
+        return "directory".equals(type);
+    }
+
+    /**
+     * Return the value of a listing attribute, or null if it is absent.
+     */
+    public String get(String key) {
+        return attributes.get(key);
+    }
+
+    public Map<String,String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    public String toString() {
+        return path;
+    }
+
+}
@@ -52,6 +52,17 @@ public class DataStoreList {
     public List<Map<String,String>> getItems() {
         return items;
     }
+
+    /**
+     * Return the items as typed entries.
+     */
+    public List<DataStoreEntry> getEntries() {
+        List<DataStoreEntry> entries = new ArrayList<DataStoreEntry>();
+        if (items!=null) {
+            for (Map<String,String> item : items) entries.add(new DataStoreEntry(item));
+        }
+        return entries;
+    }
     void addItem(Map<String,String> item) {
         items.add(item);
     }
@@ -0,0 +1,391 @@
+package org.coge.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of GET response bodies in a directory, plugged into CoGe with setDiskCache(), so that they survive restarts.
+ * Each response is stored as hash.body with its validators (ETag and Last-Modified) in hash.meta, where hash is the SHA-256 of the URL
+ * with its token removed. A cached response is revalidated with a conditional request and its body read from disk if the server answers
+ * 304 Not Modified; within the optional time-to-live it is served without asking the server at all. The bodies are kept under a size cap by
+ * evicting the least recently used, by file modification time, which a hit refreshes. A body is only stored once it has been read to the end,
+ * which includes a short tail left unread at close.
+ * Safe for concurrent use within one JVM. A directory must not be used by two caches at once: each keeps its own running total of the size,
+ * and on construction deletes the partly written files it finds, which may belong to another.
+ */
+public class DiskCache {
+
+    static final String BODY = ".body";
+    static final String META = ".meta";
+    static final String PART = ".part";
+    static final int DRAIN_LIMIT = 64*1024; // unread bytes read at close to complete a body, e.g. after a JSON parser stops at its closing brace
+
+    final Path dir;
+    final long maxBytes;
+    final long ttlMillis;
+    final AtomicLong size = new AtomicLong();
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Construct over a directory, created if need be, holding at most maxBytes of bodies and always revalidating.
+     */
+    public DiskCache(Path dir, long maxBytes) throws IOException {
+        this(dir, maxBytes, 0);
+    }
+
+    /**
+     * Construct over a directory, created if need be, holding at most maxBytes of bodies, each served without revalidation for ttlMillis
+     * after it was stored or last revalidated; a ttl of zero means always revalidate.
+     */
+    public DiskCache(Path dir, long maxBytes, long ttlMillis) throws IOException {
+        if (maxBytes<1) throw new IllegalArgumentException("maxBytes must be positive: "+maxBytes);
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        Files.createDirectories(dir);
+        // left by a body or metadata write that never finished, e.g. when the JVM died mid-response
+        for (Path part : list("*"+PART)) Files.deleteIfExists(part);
+        for (Path body : bodies()) size.addAndGet(sizeOf(body));
+        evict();
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Return the total size of the cached bodies.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Return a snapshot of the hit (served from disk, with or without revalidation), miss and eviction counts, with the size in bytes.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size.get());
+    }
+
+    /**
+     * Drop the response cached for a URL.
+     */
+    public void remove(String url) throws IOException {
+        delete(hash(key(url)));
+    }
+
+    /**
+     * Drop every cached response.
+     */
+    public synchronized void clear() throws IOException {
+        for (Path body : bodies()) delete(name(body));
+    }
+
+    /**
+     * Return the cache key for a URL: the URL without its token parameter, so that a refreshed token doesn't invalidate the cache.
+     */
+    static String key(String url) {
+        int q = url.indexOf('?');
+        if (q<0) return url;
+        StringBuilder key = new StringBuilder(url.substring(0, q));
+        char sep = '?';
+        for (String param : url.substring(q+1).split("&")) {
+            if (param.isEmpty() || param.startsWith("token=")) continue;
+            key.append(sep).append(param);
+            sep = '&';
+        }
+        return key.toString();
+    }
+
+    /**
+     * Look up the response cached for a URL, opening its body so that it can't be lost to a concurrent eviction, or return null if there is none.
+     * The caller must close the entry's body.
+     */
+    Entry lookup(String url) throws IOException {
+        String hash = hash(key(url));
+        Properties meta = new Properties();
+        InputStream body;
+        try (InputStream in = Files.newInputStream(dir.resolve(hash+META))) {
+            meta.load(in);
+            body = Files.newInputStream(dir.resolve(hash+BODY));
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        return new Entry(hash, meta, body);
+    }
+
+    /**
+     * Return true if an entry is within its time-to-live and may be served without revalidation.
+     */
+    boolean isFresh(Entry entry) {
+        return ttlMillis>0 && entry.getValidated()+ttlMillis>System.currentTimeMillis();
+    }
+
+    /**
+     * Serve an entry's body, counting a hit and marking it recently used; if revalidated, restart its time-to-live.
+     */
+    InputStream serve(Entry entry, boolean revalidated) throws IOException {
+        hits.incrementAndGet();
+        Path body = dir.resolve(entry.hash+BODY);
+        try {
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+            if (revalidated && ttlMillis>0) {
+                entry.meta.setProperty("validated", String.valueOf(System.currentTimeMillis()));
+                writeMeta(entry.hash, entry.meta);
+            }
+        } catch (NoSuchFileException ex) {
+            // evicted meanwhile; the open stream still reads it
+        }
+        return new BufferedInputStream(entry.body, FastaReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Return a stream which copies a response body to the cache as it is read, storing it with the given validators once it has been read to the end.
+     * Bodies larger than the cap are passed through without being stored.
+     */
+    InputStream store(String url, String etag, String lastModified, InputStream body) throws IOException {
+        misses.incrementAndGet();
+        final String hash = hash(key(url));
+        final Properties meta = new Properties();
+        meta.setProperty("url", key(url));
+        if (etag!=null) meta.setProperty("etag", etag);
+        if (lastModified!=null) meta.setProperty("last-modified", lastModified);
+        meta.setProperty("validated", String.valueOf(System.currentTimeMillis()));
+        final Path temp = Files.createTempFile(dir, hash, PART);
+        final OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), FastaReader.DEFAULT_CHUNK_SIZE);
+        return new FilterInputStream(body) {
+            long count;
+            boolean complete;
+            boolean abandoned;
+            boolean closed;
+
+            public int read() throws IOException {
+                int b = in.read();
+                if (b<0) complete = true; else copy(new byte[]{(byte)b}, 0, 1);
+                return b;
+            }
+
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = in.read(buf, off, len);
+                if (n<0) complete = true; else copy(buf, off, n);
+                return n;
+            }
+
+            public long skip(long n) throws IOException {
+                // skipped bytes can't be copied, so read them instead
+                byte[] buf = new byte[(int)Math.min(n, FastaReader.DEFAULT_CHUNK_SIZE)];
+                int read = read(buf, 0, buf.length);
+                return Math.max(read, 0);
+            }
+
+            public boolean markSupported() {
+                return false;
+            }
+
+            void copy(byte[] buf, int off, int len) throws IOException {
+                if (abandoned) return;
+                count += len;
+                if (count>maxBytes) {
+                    abandon();
+                } else {
+                    out.write(buf, off, len);
+                }
+            }
+
+            /**
+             * Read a short unread tail, so that a body whose reader stopped just short of the end, without seeing EOF, is still stored.
+             */
+            void drain() {
+                byte[] buf = new byte[4096];
+                try {
+                    long drained = 0;
+                    while (drained<=DRAIN_LIMIT) {
+                        int n = read(buf, 0, buf.length);
+                        if (n<0) return;
+                        drained += n;
+                    }
+                } catch (IOException ex) {
+                    // leave it incomplete
+                }
+            }
+
+            void abandon() throws IOException {
+                abandoned = true;
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                try {
+                    if (!complete && !abandoned) drain();
+                    super.close();
+                } finally {
+                    if (abandoned) {
+                        // already discarded
+                    } else if (complete) {
+                        out.close();
+                        commit(hash, temp, meta);
+                    } else {
+                        abandon();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Move a completely read body into place with its metadata, then evict down to the cap.
+     */
+    void commit(String hash, Path temp, Properties meta) throws IOException {
+        Path body = dir.resolve(hash+BODY);
+        long added = Files.size(temp);
+        long replaced = sizeOf(body);
+        Files.move(temp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeMeta(hash, meta);
+        size.addAndGet(added-replaced);
+        if (size.get()>maxBytes) evict();
+    }
+
+    void writeMeta(String hash, Properties meta) throws IOException {
+        Path temp = Files.createTempFile(dir, hash, PART);
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            meta.store(out, null);
+        }
+        Files.move(temp, dir.resolve(hash+META), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete the least recently used bodies until the total is within the cap.
+     */
+    synchronized void evict() throws IOException {
+        if (size.get()<=maxBytes) return;
+        List<Path> bodies = bodies();
+        final Map<Path,Long> times = new HashMap<Path,Long>();
+        for (Path body : bodies) times.put(body, modified(body));
+        Collections.sort(bodies, new Comparator<Path>() {
+                public int compare(Path a, Path b) {
+                    return Long.compare(times.get(a), times.get(b));
+                }
+            });
+        for (Path body : bodies) {
+            if (size.get()<=maxBytes) break;
+            delete(name(body));
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Delete an entry, adjusting the total size.
+     */
+    void delete(String hash) throws IOException {
+        Path body = dir.resolve(hash+BODY);
+        long bytes = sizeOf(body);
+        Files.deleteIfExists(dir.resolve(hash+META));
+        if (Files.deleteIfExists(body)) size.addAndGet(-bytes);
+    }
+
+    List<Path> bodies() throws IOException {
+        return list("*"+BODY);
+    }
+
+    List<Path> list(String glob) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : stream) files.add(file);
+        }
+        return files;
+    }
+
+    static String name(Path body) {
+        String name = body.getFileName().toString();
+        return name.substring(0, name.length()-BODY.length());
+    }
+
+    static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A cached response: its validators and its opened body.
+     */
+    static class Entry {
+        final String hash;
+        final Properties meta;
+        final InputStream body;
+
+        Entry(String hash, Properties meta, InputStream body) {
+            this.hash = hash;
+            this.meta = meta;
+            this.body = body;
+        }
+
+        String getETag() {
+            return meta.getProperty("etag");
+        }
+
+        String getLastModified() {
+            return meta.getProperty("last-modified");
+        }
+
+        long getValidated() {
+            return Long.parseLong(meta.getProperty("validated", "0"));
+        }
+
+        void close() throws IOException {
+            body.close();
+        }
+    }
+
+}
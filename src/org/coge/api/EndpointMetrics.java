@@ -0,0 +1,101 @@
+package org.coge.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics for one API endpoint, e.g. GET genomes/{id}: requests sent, errors (transport failures and HTTP error statuses), bytes received
+ * on the wire, the latency to the response headers, and the time spent decoding JSON responses, not counting the time waiting for the body to arrive.
+ * Thread-safe; exported to JMX by MetricsRegistry.
+ */
+public class EndpointMetrics implements EndpointMetricsMBean {
+
+    final String endpoint;
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong bytesReceived = new AtomicLong();
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram decodeTime = new LatencyHistogram();
+
+    EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Return the histogram of the time from sending a request to receiving its response headers.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Return the histogram of the time spent parsing each JSON response.
+     */
+    public LatencyHistogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    public double getLatencyMeanMillis() {
+        return latency.getMean()/1e6;
+    }
+
+    public double getLatencyP50Millis() {
+        return latency.getPercentile(0.5)/1e6;
+    }
+
+    public double getLatencyP99Millis() {
+        return latency.getPercentile(0.99)/1e6;
+    }
+
+    public double getLatencyP999Millis() {
+        return latency.getPercentile(0.999)/1e6;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latency.getMax()/1e6;
+    }
+
+    public long getDecodes() {
+        return decodeTime.getCount();
+    }
+
+    public double getDecodeMeanMillis() {
+        return decodeTime.getMean()/1e6;
+    }
+
+    public double getDecodeP99Millis() {
+        return decodeTime.getPercentile(0.99)/1e6;
+    }
+
+    public double getDecodeTotalMillis() {
+        return decodeTime.getTotal()/1e6;
+    }
+
+    public void reset() {
+        requests.set(0);
+        errors.set(0);
+        bytesReceived.set(0);
+        latency.reset();
+        decodeTime.reset();
+    }
+
+    public String toString() {
+        return endpoint+": requests="+requests.get()+";errors="+errors.get()+";bytes="+bytesReceived.get()+";latency=["+latency+"];decode=["+decodeTime+"];";
+    }
+
+}
@@ -0,0 +1,36 @@
+package org.coge.api;
+
+/**
+ * The JMX view of an EndpointMetrics. Times are in milliseconds.
+ */
+public interface EndpointMetricsMBean {
+
+    public String getEndpoint();
+
+    public long getRequests();
+
+    public long getErrors();
+
+    public long getBytesReceived();
+
+    public double getLatencyMeanMillis();
+
+    public double getLatencyP50Millis();
+
+    public double getLatencyP99Millis();
+
+    public double getLatencyP999Millis();
+
+    public double getLatencyMaxMillis();
+
+    public long getDecodes();
+
+    public double getDecodeMeanMillis();
+
+    public double getDecodeP99Millis();
+
+    public double getDecodeTotalMillis();
+
+    public void reset();
+
+}
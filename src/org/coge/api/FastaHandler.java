@@ -0,0 +1,32 @@
+package org.coge.api;
+
+import java.io.IOException;
+
+/**
+ * Receives a FASTA stream incrementally from a FastaReader: each record's header, followed by its residues in fixed-size chunks
+ * with line breaks removed. Residues are passed as raw bytes so nothing is widened to char or collected into a String.
+ */
+public interface FastaHandler {
+
+    /**
+     * Called at the start of each record.
+     *
+     * @param header the header line without the leading '&gt;'
+     */
+    public void header(String header) throws IOException;
+
+    /**
+     * Called with a chunk of residues belonging to the most recent header. The buffer is reused after this call returns.
+     *
+     * @param buf the buffer holding the residues
+     * @param off the offset of the first residue in buf
+     * @param len the number of residues
+     */
+    public void sequence(byte[] buf, int off, int len) throws IOException;
+
+    /**
+     * Called once when the stream is exhausted.
+     */
+    public void end() throws IOException;
+
+}
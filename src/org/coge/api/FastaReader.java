@@ -0,0 +1,87 @@
+package org.coge.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a FASTA stream in a single pass with constant memory, pushing headers and fixed-size residue chunks to a FastaHandler.
+ */
+public class FastaReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64*1024;
+
+    InputStream in;
+    int chunkSize;
+
+    /**
+     * Construct with the default chunk size.
+     */
+    public FastaReader(InputStream in) {
+        this(in, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct with the given chunk size, which is the number of residues passed to each FastaHandler.sequence() call (the last chunk of a record may be shorter).
+     */
+    public FastaReader(InputStream in, int chunkSize) {
+        if (chunkSize<1) throw new IllegalArgumentException("chunkSize must be positive: "+chunkSize);
+        this.in = in;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Read the whole stream, passing records to the handler. The stream is not closed.
+     *
+     * @param handler the handler to receive headers and residues
+     * @return the total number of residues read
+     */
+    public long read(FastaHandler handler) throws IOException {
+        byte[] buf = new byte[chunkSize];
+        byte[] chunk = new byte[chunkSize];
+        int n = 0;                  // residues in chunk
+        long total = 0;
+        boolean inHeader = false;
+        boolean lineStart = true;
+        ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+        int read;
+        while ((read=in.read(buf))!=-1) {
+            for (int i=0; i<read; i++) {
+                byte b = buf[i];
+                if (inHeader) {
+                    if (b=='\n') {
+                        handler.header(new String(header.toByteArray(), StandardCharsets.ISO_8859_1).trim());
+                        header.reset();
+                        inHeader = false;
+                        lineStart = true;
+                    } else {
+                        header.write(b);
+                    }
+                } else if (b=='\n' || b=='\r') {
+                    lineStart = true;
+                } else if (b=='>' && lineStart) {
+                    if (n>0) {
+                        handler.sequence(chunk, 0, n);
+                        n = 0;
+                    }
+                    inHeader = true;
+                } else {
+                    lineStart = false;
+                    if (b==' ' || b=='\t') continue;
+                    chunk[n++] = b;
+                    total++;
+                    if (n==chunkSize) {
+                        handler.sequence(chunk, 0, n);
+                        n = 0;
+                    }
+                }
+            }
+        }
+        if (inHeader) handler.header(new String(header.toByteArray(), StandardCharsets.ISO_8859_1).trim());
+        if (n>0) handler.sequence(chunk, 0, n);
+        handler.end();
+        return total;
+    }
+
+}
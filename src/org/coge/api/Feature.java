@@ -2,6 +2,7 @@ package org.coge.api;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import us.monoid.json.JSONException;
 import us.monoid.json.JSONArray;
@@ -18,11 +19,13 @@ public class Feature {
     String type;
     String name;
     String chromosome;
+    int genomeId;
     Genome genome;
     int start;
     int stop;
     int strand;
-    String sequence;
+    String sequence;                // only set if the sequence can't be packed exactly
+    PackedSequence packedSequence;
 
     // "annotations":[
     //                {"category":"db_xref","type":"CDD","value":"28970"},
@@ -57,24 +60,19 @@ public class Feature {
     }
 
     /**
-     * Construct from a JSON object and CoGe instance (because we may need to fetch the genome).
+     * Construct from a JSON object and CoGe instance, fetching the genome.
      */
     protected Feature(JSONObject json, CoGe coge) throws IOException, JSONException {
-        if (json.has("id")) {
-            id = json.getInt("id");
-            type = json.getString("type");
-            name = json.getString("name");
-            if (json.has("chromosome")) chromosome = json.getString("chromosome");
-            if (json.has("genome")) {
-                JSONObject go = json.getJSONObject("genome");
-                int gid = go.getInt("id");
-                genome = coge.fetchGenome(gid);
-            }
-            if (json.has("start")) start = json.getInt("start");
-            if (json.has("stop")) stop = json.getInt("stop");
-            if (json.has("strand")) strand = json.getInt("strand");
-            if (json.has("sequence")) sequence = json.getString("sequence");
-        }
+        this(json);
+        if (genomeId!=0) genome = coge.fetchGenome(genomeId);
+    }
+
+    /**
+     * Construct from a JSON object, taking the genome from a map of genomes already fetched.
+     */
+    protected Feature(JSONObject json, Map<Integer,Genome> genomes) throws IOException, JSONException {
+        this(json);
+        if (genomeId!=0) genome = genomes.get(genomeId);
     }
 
     /**
@@ -86,10 +84,22 @@ public class Feature {
             type = json.getString("type");
             name = json.getString("name");
             if (json.has("chromosome")) chromosome = json.getString("chromosome");
+            genomeId = getGenomeId(json);
             if (json.has("start")) start = json.getInt("start");
             if (json.has("stop")) stop = json.getInt("stop");
             if (json.has("strand")) strand = json.getInt("strand");
-            if (json.has("sequence")) sequence = json.getString("sequence");
+            if (json.has("sequence")) setSequence(json.getString("sequence"));
+        }
+    }
+
+    /**
+     * Return the id of the genome referenced by a feature's JSON, or 0 if there is none.
+     */
+    static int getGenomeId(JSONObject json) throws JSONException {
+        if (json.has("id") && json.has("genome")) {
+            return json.getJSONObject("genome").getInt("id");
+        } else {
+            return 0;
         }
     }
 
@@ -114,11 +124,19 @@ public class Feature {
         this.chromosome = chromosome;
     }
 
+    /**
+     * Return the id of the feature's genome, or 0 if it wasn't given.
+     */
+    public int getGenomeId() {
+        return genomeId;
+    }
+
     public Genome getGenome() {
         return genome;
     }
     void setGenome(Genome genome) {
         this.genome = genome;
+        if (genome!=null) this.genomeId = genome.getId();
     }
 
     public int getStart() {
@@ -142,13 +160,39 @@ public class Feature {
         this.strand = strand;
     }
 
+    /**
+     * Return the sequence, decoded from its packed form if it was a nucleotide sequence.
+     */
     public String getSequence() {
-        return sequence;
+        return packedSequence!=null ? packedSequence.toString() : sequence;
     }
+    /**
+     * Store the sequence packed four bits per base, falling back to the String if packing would not give it back unchanged: if it contains
+     * anything other than nucleotide codes, or U or '.', which pack as T and '-'.
+     */
     void setSequence(String sequence) {
+        this.sequence = null;
+        this.packedSequence = null;
+        if (sequence==null) return;
+        try {
+            PackedSequence packed = PackedSequence.valueOf(sequence);
+            if (packed.toString().equals(sequence)) {
+                packedSequence = packed;
+                return;
+            }
+        } catch (IllegalArgumentException ex) {
+            // not nucleotides
+        }
         this.sequence = sequence;
     }
 
+    /**
+     * Return the sequence in packed form, or null if there is none or it couldn't be packed exactly.
+     */
+    public PackedSequence getPackedSequence() {
+        return packedSequence;
+    }
+
 }
         
         
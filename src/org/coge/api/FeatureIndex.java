@@ -0,0 +1,281 @@
+package org.coge.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable per-chromosome interval index over a FeatureTable, answering overlap, containment and nearest-feature queries in logarithmic time.
+ * Each chromosome's features are sorted by start into flat arrays which double as an implicit augmented interval tree: the node at index i
+ * stores the maximum end in its subtree, so a query descends only into subtrees that can overlap it. The sort is a parallel sort of packed
+ * start/row keys. Coordinates are one-based and inclusive, as in Feature; queries return table rows ordered by start. Safe for concurrent queries.
+ */
+public class FeatureIndex {
+
+    FeatureTable table;
+    Tree[] trees; // by chromosome code
+
+    /**
+     * Build an index over a FeatureTable. The table must not be modified afterwards.
+     */
+    public FeatureIndex(FeatureTable table) {
+        this.table = table;
+        int chrs = table.chromosomeNames.size();
+        int[] counts = new int[chrs];
+        for (int row=0; row<table.size; row++) {
+            int chr = table.chromosomes[row];
+            if (chr>=0) counts[chr]++;
+        }
+        long[][] keys = new long[chrs][];
+        for (int chr=0; chr<chrs; chr++) keys[chr] = new long[counts[chr]];
+        Arrays.fill(counts, 0);
+        for (int row=0; row<table.size; row++) {
+            int chr = table.chromosomes[row];
+            if (chr>=0) keys[chr][counts[chr]++] = ((long)table.starts[row]<<32) | row;
+        }
+        trees = new Tree[chrs];
+        for (int chr=0; chr<chrs; chr++) {
+            Arrays.parallelSort(keys[chr]);
+            trees[chr] = new Tree(table, keys[chr]);
+        }
+    }
+
+    /**
+     * Build an index over a collection of features, collecting them into a new FeatureTable.
+     */
+    public static FeatureIndex build(int genomeId, Collection<? extends Feature> features) {
+        FeatureTable table = new FeatureTable(genomeId, features.size());
+        table.addAll(features.iterator());
+        return new FeatureIndex(table);
+    }
+
+    /**
+     * Return the indexed table.
+     */
+    public FeatureTable getTable() {
+        return table;
+    }
+
+    /**
+     * Return the rows of the features overlapping [start, stop] on the given chromosome.
+     */
+    public int[] overlapping(String chr, int start, int stop) {
+        Tree tree = tree(chr);
+        if (tree==null) return new int[0];
+        IntList hits = new IntList();
+        tree.overlap(start, stop+1L, hits);
+        return tree.rows(hits);
+    }
+
+    /**
+     * Return the rows of the features covering the given position.
+     */
+    public int[] at(String chr, int pos) {
+        return overlapping(chr, pos, pos);
+    }
+
+    /**
+     * Return the rows of the features which entirely contain [start, stop].
+     */
+    public int[] containing(String chr, int start, int stop) {
+        Tree tree = tree(chr);
+        if (tree==null) return new int[0];
+        IntList hits = new IntList();
+        tree.overlap(start, stop+1L, hits);
+        IntList kept = new IntList();
+        for (int i=0; i<hits.size; i++) {
+            int j = hits.values[i];
+            if (tree.starts[j]<=start && tree.ends[j]>stop) kept.add(j);
+        }
+        return tree.rows(kept);
+    }
+
+    /**
+     * Return the rows of the features lying entirely within [start, stop].
+     */
+    public int[] containedIn(String chr, int start, int stop) {
+        Tree tree = tree(chr);
+        if (tree==null) return new int[0];
+        IntList hits = new IntList();
+        tree.overlap(start, stop+1L, hits);
+        IntList kept = new IntList();
+        for (int i=0; i<hits.size; i++) {
+            int j = hits.values[i];
+            if (tree.starts[j]>=start && tree.ends[j]<=stop+1L) kept.add(j);
+        }
+        return tree.rows(kept);
+    }
+
+    /**
+     * Return the rows of the k features nearest the given position, closest first; features covering it have distance zero.
+     * Ties at the k-th distance are broken by start.
+     */
+    public int[] nearest(String chr, int pos, int k) {
+        Tree tree = tree(chr);
+        if (tree==null || k<=0) return new int[0];
+        k = Math.min(k, tree.starts.length);
+        // widen a window around pos until it holds k features no further away than its half-width; any closer feature must overlap it
+        long radius = 0;
+        while (true) {
+            IntList hits = new IntList();
+            tree.overlap(pos-radius, pos+radius+1, hits);
+            int within = 0;
+            for (int i=0; i<hits.size; i++) {
+                if (tree.distance(hits.values[i], pos)<=radius) within++;
+            }
+            if (within>=k || hits.size==tree.starts.length) {
+                long[] byDistance = new long[hits.size];
+                for (int i=0; i<hits.size; i++) {
+                    byDistance[i] = (tree.distance(hits.values[i], pos)<<32) | hits.values[i];
+                }
+                Arrays.sort(byDistance);
+                int[] rows = new int[k];
+                for (int i=0; i<k; i++) rows[i] = tree.rows[(int)byDistance[i]];
+                return rows;
+            }
+            radius = radius==0 ? 1024 : radius*4;
+        }
+    }
+
+    /**
+     * Materialize the features at the given rows.
+     */
+    public List<Feature> getFeatures(int[] rows) {
+        List<Feature> features = new ArrayList<Feature>(rows.length);
+        for (int row : rows) features.add(table.getFeature(row));
+        return features;
+    }
+
+    Tree tree(String chr) {
+        int code = table.getChromosomeCode(chr);
+        return code<0 ? null : trees[code];
+    }
+
+    /**
+     * One chromosome's features sorted by start, as half-open [start, end) intervals, with the implicit tree's subtree maximum ends.
+     */
+    static class Tree {
+        int[] starts;
+        long[] ends;
+        long[] maxEnds;
+        int[] rows;
+        int rootLevel;
+
+        Tree(FeatureTable table, long[] keys) {
+            int n = keys.length;
+            starts = new int[n];
+            ends = new long[n];
+            maxEnds = new long[n];
+            rows = new int[n];
+            for (int i=0; i<n; i++) {
+                int row = (int)keys[i];
+                rows[i] = row;
+                starts[i] = table.starts[row];
+                ends[i] = Math.max((long)table.stops[row], table.starts[row])+1;
+            }
+            rootLevel = index();
+        }
+
+        /**
+         * Fill maxEnds bottom-up; leaves are the even indexes, and the nodes at level k are at indexes with k trailing one bits.
+         * Return the level of the root.
+         */
+        int index() {
+            int n = starts.length;
+            if (n==0) return -1;
+            int lastI = 0;
+            long last = 0;
+            for (int i=0; i<n; i+=2) {
+                lastI = i;
+                last = maxEnds[i] = ends[i];
+            }
+            int k = 1;
+            for (; 1L<<k<=n; k++) {
+                long x = 1L<<(k-1);
+                long step = x<<2;
+                for (long i=(x<<1)-1; i<n; i+=step) {
+                    long el = maxEnds[(int)(i-x)];
+                    long er = i+x<n ? maxEnds[(int)(i+x)] : last;
+                    maxEnds[(int)i] = Math.max(ends[(int)i], Math.max(el, er));
+                }
+                lastI = ((lastI>>>k)&1)!=0 ? (int)(lastI-x) : (int)(lastI+x);
+                if (lastI<n && maxEnds[lastI]>last) last = maxEnds[lastI];
+            }
+            return k-1;
+        }
+
+        /**
+         * Add the indexes of the intervals overlapping [st, en) to hits, in start order.
+         */
+        void overlap(long st, long en, IntList hits) {
+            int n = starts.length;
+            if (n==0) return;
+            long[] xs = new long[64];
+            int[] ks = new int[64];
+            boolean[] ws = new boolean[64];
+            int t = 0;
+            xs[t] = (1L<<rootLevel)-1;
+            ks[t] = rootLevel;
+            ws[t++] = false;
+            while (t>0) {
+                t--;
+                long x = xs[t];
+                int k = ks[t];
+                boolean leftDone = ws[t];
+                if (k<=3) {
+                    // small subtree: scan it linearly
+                    long i0 = x>>k<<k;
+                    long i1 = Math.min(i0+(1L<<(k+1))-1, n);
+                    for (long i=i0; i<i1 && starts[(int)i]<en; i++) {
+                        if (st<ends[(int)i]) hits.add((int)i);
+                    }
+                } else if (!leftDone) {
+                    long y = x-(1L<<(k-1));
+                    xs[t] = x;
+                    ks[t] = k;
+                    ws[t++] = true;
+                    if (y>=n || maxEnds[(int)y]>st) {
+                        xs[t] = y;
+                        ks[t] = k-1;
+                        ws[t++] = false;
+                    }
+                } else if (x<n && starts[(int)x]<en) {
+                    if (st<ends[(int)x]) hits.add((int)x);
+                    xs[t] = x+(1L<<(k-1));
+                    ks[t] = k-1;
+                    ws[t++] = false;
+                }
+            }
+        }
+
+        /**
+         * Return the distance from pos to interval i, zero if it covers pos.
+         */
+        long distance(int i, long pos) {
+            if (pos<starts[i]) return starts[i]-pos;
+            if (pos>=ends[i]) return pos-ends[i]+1;
+            return 0;
+        }
+
+        int[] rows(IntList hits) {
+            int[] out = new int[hits.size];
+            for (int i=0; i<hits.size; i++) out[i] = rows[hits.values[i]];
+            return out;
+        }
+    }
+
+    /**
+     * A growable int array.
+     */
+    static class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size==values.length) values = Arrays.copyOf(values, size*2);
+            values[size++] = v;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.coge.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+import us.monoid.json.JSONTokener;
+
+/**
+ * Pull-parses a genome features response, {"id":n, "features":[{...}, ...]}, decoding one Feature at a time straight off the wire so the
+ * response is never held in memory. Close it to release the connection if you stop early; it closes itself once the response is exhausted.
+ * Read or parse failures are thrown from hasNext() and next() as an UncheckedIOException, as is a CoGe error in place of the features, whose
+ * cause is then the CoGeException.
+ */
+public class FeatureIterator implements Iterator<Feature>, Closeable {
+
+    InputStream stream;
+    JSONTokener tokener;
+    boolean inFeatures;  // positioned inside the features array
+    boolean done;
+    Feature next;
+    int genomeId;
+
+    /**
+     * Construct from a features response stream.
+     */
+    FeatureIterator(InputStream stream) throws IOException {
+        this.stream = stream;
+        this.tokener = new JSONTokener(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        try {
+            if (tokener.nextClean()!='{') throw tokener.syntaxError("A features response must begin with '{'");
+        } catch (JSONException ex) {
+            close();
+            throw toIOException(ex);
+        }
+    }
+
+    public boolean hasNext() {
+        if (next!=null) return true;
+        if (done) return false;
+        try {
+            next = advance();
+            if (next==null) close();
+            return next!=null;
+        } catch (JSONException ex) {
+            closeQuietly();
+            throw new UncheckedIOException(toIOException(ex));
+        } catch (IOException ex) {
+            closeQuietly();
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public Feature next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Feature f = next;
+        next = null;
+        return f;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Return the genome id given in the response, or 0 if it hasn't been read yet; it may follow the features.
+     */
+    public int getGenomeId() {
+        return genomeId;
+    }
+
+    /**
+     * Close the underlying response stream.
+     */
+    public void close() throws IOException {
+        done = true;
+        next = null;
+        stream.close();
+    }
+
+    /**
+     * Read up to the next feature, or to the end of the response, returning null at the end.
+     */
+    Feature advance() throws IOException, JSONException {
+        while (true) {
+            if (inFeatures) {
+                char c = tokener.nextClean();
+                if (c==',') c = tokener.nextClean();
+                if (c==']') {
+                    inFeatures = false;
+                } else {
+                    tokener.back();
+                    Object value = tokener.nextValue();
+                    if (!(value instanceof JSONObject)) throw tokener.syntaxError("Expected a feature object");
+                    return new Feature((JSONObject) value);
+                }
+            }
+            // between members of the top-level object
+            char c = tokener.nextClean();
+            if (c==',') c = tokener.nextClean();
+            if (c=='}' || c==0) return null;
+            tokener.back();
+            String key = tokener.nextValue().toString();
+            if (tokener.nextClean()!=':') throw tokener.syntaxError("Expected ':' after "+key);
+            if (key.equals("features")) {
+                if (tokener.nextClean()!='[') throw tokener.syntaxError("Expected features array");
+                inFeatures = true;
+            } else {
+                Object value = tokener.nextValue();
+                if (key.equals("id") && value instanceof Number) genomeId = ((Number)value).intValue();
+                if (key.equals("error")) throw new CoGeException(new JSONObject().put("error", value));
+            }
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Unwrap an IOException wrapped by the tokener, or wrap a syntax error.
+     */
+    static IOException toIOException(JSONException ex) {
+        if (ex.getCause() instanceof IOException) return (IOException) ex.getCause();
+        return new IOException("malformed features response: "+ex.getMessage(), ex);
+    }
+
+}
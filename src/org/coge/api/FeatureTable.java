@@ -0,0 +1,225 @@
+package org.coge.api;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, column-oriented set of features, typically a whole-genome annotation. Ids, starts, stops and strands are held in parallel primitive
+ * arrays and chromosome and type names are dictionary-encoded, so a row costs a few dozen bytes instead of a Feature object with its boxed fields
+ * and Strings. Rows are addressed by index; getFeature() materializes a Feature only when one is needed. Not thread-safe while being filled.
+ */
+public class FeatureTable implements Iterable<Feature> {
+
+    int genomeId;
+    int size;
+    int[] ids;
+    int[] starts;
+    int[] stops;
+    byte[] strands;
+    int[] chromosomes;
+    int[] types;
+    String[] names;
+
+    List<String> chromosomeNames = new ArrayList<String>();
+    Map<String,Integer> chromosomeCodes = new HashMap<String,Integer>();
+    List<String> typeNames = new ArrayList<String>();
+    Map<String,Integer> typeCodes = new HashMap<String,Integer>();
+
+    /**
+     * Construct an empty table for the given genome.
+     */
+    public FeatureTable(int genomeId) {
+        this(genomeId, 1024);
+    }
+
+    /**
+     * Construct an empty table for the given genome with room for the given number of features.
+     */
+    public FeatureTable(int genomeId, int capacity) {
+        this.genomeId = genomeId;
+        capacity = Math.max(capacity, 16);
+        ids = new int[capacity];
+        starts = new int[capacity];
+        stops = new int[capacity];
+        strands = new byte[capacity];
+        chromosomes = new int[capacity];
+        types = new int[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * Add a feature, returning its row index.
+     */
+    public int add(Feature f) {
+        if (size==ids.length) resize(Math.max(16, size*2));
+        ids[size] = f.getId();
+        starts[size] = f.getStart();
+        stops[size] = f.getStop();
+        strands[size] = (byte) f.getStrand();
+        chromosomes[size] = encode(f.getChromosome(), chromosomeNames, chromosomeCodes);
+        types[size] = encode(f.getType(), typeNames, typeCodes);
+        names[size] = f.getName();
+        return size++;
+    }
+
+    /**
+     * Add all the features from an iterator, such as a FeatureIterator, without collecting them first.
+     */
+    public void addAll(Iterator<? extends Feature> features) {
+        while (features.hasNext()) add(features.next());
+    }
+
+    /**
+     * Release unused capacity.
+     */
+    public void trimToSize() {
+        resize(size);
+    }
+
+    public int getGenomeId() {
+        return genomeId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        check(row);
+        return ids[row];
+    }
+
+    public int getStart(int row) {
+        check(row);
+        return starts[row];
+    }
+
+    public int getStop(int row) {
+        check(row);
+        return stops[row];
+    }
+
+    public int getStrand(int row) {
+        check(row);
+        return strands[row];
+    }
+
+    public String getChromosome(int row) {
+        check(row);
+        return decode(chromosomes[row], chromosomeNames);
+    }
+
+    /**
+     * Return the dictionary code of the row's chromosome, an index into getChromosomes(), or -1 if it has none.
+     */
+    public int getChromosomeCode(int row) {
+        check(row);
+        return chromosomes[row];
+    }
+
+    public String getType(int row) {
+        check(row);
+        return decode(types[row], typeNames);
+    }
+
+    public String getName(int row) {
+        check(row);
+        return names[row];
+    }
+
+    /**
+     * Return the distinct chromosome names, indexed by chromosome code.
+     */
+    public List<String> getChromosomes() {
+        return Collections.unmodifiableList(chromosomeNames);
+    }
+
+    /**
+     * Return the distinct feature types, indexed by type code.
+     */
+    public List<String> getTypes() {
+        return Collections.unmodifiableList(typeNames);
+    }
+
+    /**
+     * Return the code for a chromosome name, or -1 if no feature is on it.
+     */
+    public int getChromosomeCode(String chromosome) {
+        Integer code = chromosomeCodes.get(chromosome);
+        return code==null ? -1 : code;
+    }
+
+    /**
+     * Materialize a row as a new Feature. Its genome is not populated.
+     */
+    public Feature getFeature(int row) {
+        check(row);
+        Feature f = new Feature(ids[row], decode(types[row], typeNames));
+        f.name = names[row];
+        f.chromosome = decode(chromosomes[row], chromosomeNames);
+        f.start = starts[row];
+        f.stop = stops[row];
+        f.strand = strands[row];
+        return f;
+    }
+
+    /**
+     * Return a list view which materializes each Feature as it is accessed.
+     */
+    public List<Feature> asList() {
+        return new AbstractList<Feature>() {
+            public Feature get(int row) {
+                return getFeature(row);
+            }
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterate over the rows, materializing each Feature in turn.
+     */
+    public Iterator<Feature> iterator() {
+        return asList().iterator();
+    }
+
+    void check(int row) {
+        if (row<0 || row>=size) throw new IndexOutOfBoundsException("row "+row+" outside 0-"+size);
+    }
+
+    void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        strands = Arrays.copyOf(strands, capacity);
+        chromosomes = Arrays.copyOf(chromosomes, capacity);
+        types = Arrays.copyOf(types, capacity);
+        names = Arrays.copyOf(names, capacity);
+    }
+
+    /**
+     * Return the dictionary code for a value, adding it if new; null is coded -1.
+     */
+    static int encode(String value, List<String> values, Map<String,Integer> codes) {
+        if (value==null) return -1;
+        Integer code = codes.get(value);
+        if (code==null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    static String decode(int code, List<String> values) {
+        return code<0 ? null : values.get(code);
+    }
+
+}
@@ -24,6 +24,7 @@ public class Genome extends CoGeObject {
     boolean deleted = false;   // default to not deleted
     int chromosomeCount;
     
+    List<String> chromosomes;
     List<Metadata> additionalMetadata;
     List<Integer> experiments;
     List<FeatureType> featureTypes;
@@ -65,6 +66,18 @@ public class Genome extends CoGeObject {
         if (json.has("restricted")) restricted = json.getBoolean("restricted");
         if (json.has("deleted")) deleted = json.getBoolean("deleted");
         if (json.has("chromosome_count")) chromosomeCount = json.getInt("chromosome_count");
+        if (json.has("chromosomes")) {
+            chromosomes = new ArrayList<String>();
+            JSONArray chrarray = json.getJSONArray("chromosomes");
+            for (int i=0; i<chrarray.length(); i++) {
+                Object chr = chrarray.get(i);
+                if (chr instanceof JSONObject) {
+                    chromosomes.add(((JSONObject)chr).getString("name"));
+                } else {
+                    chromosomes.add(chr.toString());
+                }
+            }
+        }
         if (json.has("additional_metadata")) {
             additionalMetadata = new ArrayList<Metadata>();
             JSONArray metarray = json.getJSONArray("additional_metadata");
@@ -118,6 +131,10 @@ public class Genome extends CoGeObject {
         this.chromosomeCount = chromosomeCount;
     }
 
+    public void setChromosomes(List<String> chromosomes) {
+        this.chromosomes = chromosomes;
+    }
+
     public void setAdditionalMetadata(List<Metadata> additionalMetadata) {
         this.additionalMetadata = additionalMetadata;
     }
@@ -158,6 +175,10 @@ public class Genome extends CoGeObject {
         return chromosomeCount;
     }
 
+    public List<String> getChromosomes() {
+        return chromosomes;
+    }
+
     public List<Metadata> getAdditionalMetadata() {
         return additionalMetadata;
     }
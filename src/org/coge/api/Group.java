@@ -46,6 +46,17 @@ public class Group extends CoGeObject {
     void setUsers(List<Integer> users) {
         this.users = users;
     }
+
+    public String getRole() {
+        return role;
+    }
+
+    /**
+     * Return the ids of the group's users. The API has no user fetch, so these can't be resolved to user records.
+     */
+    public List<Integer> getUsers() {
+        return users;
+    }
 }
         
         
@@ -0,0 +1,78 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The default Transport, on java.net.http.HttpClient. One client is shared by every request, so connections (and TLS sessions) are kept
+ * alive and reused, and requests to HTTP/2 servers are multiplexed over a single connection. The JDK sizes the connection pool itself;
+ * its limits can be tuned with the jdk.httpclient.connectionPoolSize and jdk.httpclient.keepalive.timeout system properties.
+ */
+public class HttpClientTransport implements Transport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    HttpClient client;
+    Duration requestTimeout;
+
+    /**
+     * Construct with HTTP/2 preferred, the default connect timeout and no request timeout.
+     */
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, null);
+    }
+
+    /**
+     * Construct with HTTP/2 preferred and the given timeouts.
+     *
+     * @param connectTimeout the time allowed to establish a connection
+     * @param requestTimeout the time allowed to receive the response headers, or null for no limit
+     */
+    public HttpClientTransport(Duration connectTimeout, Duration requestTimeout) {
+        this(HttpClient.newBuilder()
+             .version(HttpClient.Version.HTTP_2)
+             .followRedirects(HttpClient.Redirect.NORMAL)
+             .connectTimeout(connectTimeout)
+             .build(),
+             requestTimeout);
+    }
+
+    /**
+     * Construct around a configured client, e.g. with its own executor, proxy, SSL context or protocol version.
+     *
+     * @param client the client to send requests with
+     * @param requestTimeout the time allowed to receive the response headers, or null for no limit
+     */
+    public HttpClientTransport(HttpClient client, Duration requestTimeout) {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public TransportResponse execute(String method, String url, Map<String,String> headers, byte[] body) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .method(method, body==null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (requestTimeout!=null) builder.timeout(requestTimeout);
+        for (Map.Entry<String,String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        try {
+            HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for "+url);
+        }
+    }
+
+}
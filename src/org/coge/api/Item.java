@@ -28,4 +28,19 @@ public class Item {
         this.role = role;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Return the item type, e.g. genome or experiment.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
 }
@@ -0,0 +1,112 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * Encapsulate a Job record: the status of a load or other workflow submitted to CoGe, e.g. by addGenome or addFeatures.
+ */
+public class Job {
+
+    int id;
+    String status;
+    int taskCount;
+    int completedTaskCount;
+    List<Map<String,String>> results = new ArrayList<Map<String,String>>();
+
+    /**
+     * Construct from a JSON object.
+     */
+    protected Job(JSONObject json) throws IOException, JSONException {
+        if (json.has("id")) id = json.getInt("id");
+        if (json.has("status")) status = json.getString("status");
+        if (json.has("tasks")) {
+            JSONArray tasks = json.getJSONArray("tasks");
+            taskCount = tasks.length();
+            for (int i=0; i<tasks.length(); i++) {
+                JSONObject task = tasks.getJSONObject(i);
+                if (task.has("status") && task.getString("status").equalsIgnoreCase("completed")) completedTaskCount++;
+            }
+        }
+        if (json.has("results")) {
+            JSONArray ja = json.getJSONArray("results");
+            for (int i=0; i<ja.length(); i++) {
+                JSONObject jo = ja.getJSONObject(i);
+                Map<String,String> result = new LinkedHashMap<String,String>();
+                Iterator<String> keys = jo.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    result.put(key, jo.getString(key));
+                }
+                results.add(result);
+            }
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Return the status, e.g. Scheduled, Running, Completed or Failed.
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    public int getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    /**
+     * Return the job's results, e.g. {"type":"genome","id":"16911"}.
+     */
+    public List<Map<String,String>> getResults() {
+        return results;
+    }
+
+    /**
+     * Return the id of the first result of the given type, e.g. genome, or 0 if there is none.
+     */
+    public int getResultId(String type) {
+        for (Map<String,String> result : results) {
+            if (type.equals(result.get("type")) && result.get("id")!=null) return Integer.parseInt(result.get("id"));
+        }
+        return 0;
+    }
+
+    /**
+     * Return true if the job has finished, successfully or not.
+     */
+    public boolean isDone() {
+        return isCompleted() || isFailed();
+    }
+
+    public boolean isCompleted() {
+        return "completed".equalsIgnoreCase(status);
+    }
+
+    /**
+     * Return true if the job failed or was cancelled.
+     */
+    public boolean isFailed() {
+        return "failed".equalsIgnoreCase(status) || "cancelled".equalsIgnoreCase(status) || "terminated".equalsIgnoreCase(status) || "error".equalsIgnoreCase(status);
+    }
+
+    public String toString() {
+        return "id="+id+";status="+status+";tasks="+completedTaskCount+"/"+taskCount+";results="+results+";";
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.coge.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import us.monoid.json.JSONObject;
+
+/**
+ * The default ObjectCache: a size-bounded, least-recently-used map with an optional time-to-live per entry.
+ */
+public class LRUObjectCache implements ObjectCache {
+
+    final int maxEntries;
+    final long ttlMillis;
+    final LinkedHashMap<String,Entry> map;
+    long hits;
+    long misses;
+    long evictions;
+
+    /**
+     * Construct holding at most maxEntries records which never expire.
+     */
+    public LRUObjectCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * Construct holding at most maxEntries records, each expiring ttlMillis after it was cached; a ttl of zero means never.
+     */
+    public LRUObjectCache(int maxEntries, long ttlMillis) {
+        if (maxEntries<1) throw new IllegalArgumentException("maxEntries must be positive: "+maxEntries);
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+                if (size()>LRUObjectCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized JSONObject get(String objKey, int id) {
+        String key = key(objKey, id);
+        Entry entry = map.get(key);
+        if (entry!=null && entry.expires!=0 && entry.expires<System.currentTimeMillis()) {
+            map.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry==null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.json;
+    }
+
+    public synchronized void put(String objKey, int id, JSONObject json) {
+        long expires = ttlMillis>0 ? System.currentTimeMillis()+ttlMillis : 0;
+        map.put(key(objKey, id), new Entry(json, expires));
+    }
+
+    public synchronized void invalidate(String objKey, int id) {
+        map.remove(key(objKey, id));
+    }
+
+    public synchronized void invalidateAll() {
+        map.clear();
+    }
+
+    /**
+     * Drop expired entries now rather than when they are next requested.
+     */
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.expires!=0 && entry.expires<now) {
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, map.size());
+    }
+
+    static String key(String objKey, int id) {
+        return objKey+"/"+id;
+    }
+
+    /**
+     * A cached record and its expiry time, zero for never.
+     */
+    static class Entry {
+        final JSONObject json;
+        final long expires;
+
+        Entry(JSONObject json, long expires) {
+            this.json = json;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.coge.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, for percentiles such as p50, p99 and p999. Values are counted in log-linear buckets:
+ * sixteen to each power of two, so a percentile is reported within 1/16 (6.25%) of the true value, in constant memory whatever the range.
+ * Recording is a couple of atomic increments. Reads taken during recording are approximate, as is reset().
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1<<SUB_BITS;
+    static final int BUCKETS = (64-SUB_BITS)*SUB_BUCKETS;
+
+    final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration; negative durations count as zero.
+     */
+    public void record(long nanos) {
+        if (nanos<0) nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        if (nanos>max.get()) max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Return the sum of the recorded durations in nanoseconds.
+     */
+    public long getTotal() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Return the mean in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n==0 ? 0 : (double)sum.get()/n;
+    }
+
+    /**
+     * Return the duration in nanoseconds which the given fraction of recorded durations, e.g. 0.99, did not exceed: the upper bound of its bucket,
+     * capped at the maximum. Returns 0 if nothing has been recorded.
+     */
+    public long getPercentile(double fraction) {
+        long n = count.get();
+        if (n==0) return 0;
+        long rank = Math.max(1, (long)Math.ceil(fraction*n));
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen>=rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i=0; i<BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public String toString() {
+        return "count="+getCount()+";mean="+millis(getMean())+"ms;p50="+millis(getPercentile(0.5))+"ms;p99="+millis(getPercentile(0.99))+
+            "ms;p999="+millis(getPercentile(0.999))+"ms;max="+millis(getMax())+"ms;";
+    }
+
+    static String millis(double nanos) {
+        return String.format("%.3f", nanos/1e6);
+    }
+
+    /**
+     * Return the bucket for a value: the value itself below SUB_BUCKETS, then SUB_BUCKETS buckets for each power of two.
+     */
+    static int index(long value) {
+        if (value<SUB_BUCKETS) return (int)value;
+        int exponent = 63-Long.numberOfLeadingZeros(value);
+        int sub = (int)(value>>>(exponent-SUB_BITS))&(SUB_BUCKETS-1);
+        return (exponent-SUB_BITS+1)*SUB_BUCKETS+sub;
+    }
+
+    /**
+     * Return the largest value counted in a bucket.
+     */
+    static long upperBound(int index) {
+        if (index<SUB_BUCKETS) return index;
+        int exponent = index/SUB_BUCKETS+SUB_BITS-1;
+        int sub = index%SUB_BUCKETS;
+        long width = 1L<<(exponent-SUB_BITS);
+        return ((long)(SUB_BUCKETS+sub)<<(exponent-SUB_BITS))+width-1;
+    }
+
+}
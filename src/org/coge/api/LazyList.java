@@ -0,0 +1,82 @@
+package org.coge.api;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only list of CoGe objects referenced by id, such as an organism's genomes, which is not fetched until an element is first accessed.
+ * The first access fetches every element in one concurrent batch, so walking the list costs one round of parallel requests rather than
+ * one request per element. An element which couldn't be fetched is null, and getFailures() says why. size() and getIds() never fetch. Thread-safe.
+ */
+public class LazyList<T> extends AbstractList<T> {
+
+    /**
+     * Fetches a batch of objects by id.
+     */
+    interface Loader<T> {
+        BatchResult<T> load(List<Integer> ids);
+    }
+
+    final List<Integer> ids;
+    final Loader<T> loader;
+    volatile BatchResult<T> batch;
+
+    LazyList(List<Integer> ids, Loader<T> loader) {
+        this.ids = ids==null ? Collections.<Integer>emptyList() : ids;
+        this.loader = loader;
+    }
+
+    /**
+     * Return the element at the given index, fetching the whole list if it hasn't been yet; null if that element couldn't be fetched.
+     */
+    public T get(int index) {
+        return loadBatch().get(index);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Return the ids of the elements, without fetching them.
+     */
+    public List<Integer> getIds() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Return true if the elements have been fetched.
+     */
+    public boolean isLoaded() {
+        return batch!=null;
+    }
+
+    /**
+     * Return the exception for each id which couldn't be fetched, fetching the list if it hasn't been yet.
+     */
+    public Map<Integer,Exception> getFailures() {
+        return loadBatch().getFailures();
+    }
+
+    /**
+     * Fetch the elements now if they haven't been yet.
+     */
+    public LazyList<T> load() {
+        loadBatch();
+        return this;
+    }
+
+    BatchResult<T> loadBatch() {
+        BatchResult<T> b = batch;
+        if (b==null) {
+            synchronized (this) {
+                b = batch;
+                if (b==null) batch = b = loader.load(ids);
+            }
+        }
+        return b;
+    }
+
+}
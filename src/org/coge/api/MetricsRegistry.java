@@ -0,0 +1,92 @@
+package org.coge.api;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The per-endpoint metrics of one or more CoGe instances, keyed by method and path template, e.g. GET genomes/{id}/features/{type}.
+ * Each CoGe has its own registry; pass one to setMetrics() on several to pool them. Once registerMBeans() is called, every endpoint,
+ * including those first used later, is exported as an MBean named org.coge.api:type=Endpoint,client=name,endpoint="...".
+ */
+public class MetricsRegistry {
+
+    public static final String DOMAIN = "org.coge.api";
+
+    final Map<String,EndpointMetrics> endpoints = new ConcurrentHashMap<String,EndpointMetrics>();
+    volatile String jmxName;
+
+    /**
+     * Return the metrics for an endpoint, creating them on first use.
+     */
+    public EndpointMetrics endpoint(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics!=null) return metrics;
+        metrics = endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics(key));
+        String name = jmxName;
+        if (name!=null) {
+            try {
+                register(name, metrics);
+            } catch (JMException ex) {
+                // already registered by a concurrent first use, or JMX refused it; the metrics are still recorded
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Return the endpoints' metrics, sorted by endpoint.
+     */
+    public Map<String,EndpointMetrics> getEndpoints() {
+        return new TreeMap<String,EndpointMetrics>(endpoints);
+    }
+
+    public void reset() {
+        for (EndpointMetrics metrics : endpoints.values()) metrics.reset();
+    }
+
+    /**
+     * Export every endpoint's metrics to the platform MBean server under the given client name, e.g. the application's name.
+     */
+    public synchronized void registerMBeans(String name) throws JMException {
+        if (jmxName!=null) unregisterMBeans();
+        jmxName = name;
+        for (EndpointMetrics metrics : endpoints.values()) {
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName(name, metrics.getEndpoint()))) register(name, metrics);
+        }
+    }
+
+    /**
+     * Remove the MBeans exported by registerMBeans().
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        String name = jmxName;
+        if (name==null) return;
+        jmxName = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (EndpointMetrics metrics : endpoints.values()) {
+            ObjectName objectName = objectName(name, metrics.getEndpoint());
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        }
+    }
+
+    static void register(String name, EndpointMetrics metrics) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName(name, metrics.getEndpoint()));
+    }
+
+    static ObjectName objectName(String name, String endpoint) throws JMException {
+        return new ObjectName(DOMAIN+":type=Endpoint,client="+ObjectName.quote(name)+",endpoint="+ObjectName.quote(endpoint));
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (EndpointMetrics metrics : getEndpoints().values()) out.append(metrics).append('\n');
+        return out.toString();
+    }
+
+}
@@ -76,6 +76,31 @@ public class Notebook extends CoGeObject {
         this.items = items;
     }
 
+    public String getType() {
+        return type;
+    }
+
+    public boolean isRestricted() {
+        return restricted;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Return the ids of the items of the given type, e.g. genome or experiment, in notebook order.
+     */
+    public List<Integer> getItemIds(String itemType) {
+        List<Integer> ids = new ArrayList<Integer>();
+        if (items!=null) {
+            for (Item item : items) {
+                if (itemType.equals(item.type)) ids.add(item.id);
+            }
+        }
+        return ids;
+    }
+
     /**
      * The venerable toString() method.
      */
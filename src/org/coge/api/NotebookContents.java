@@ -0,0 +1,87 @@
+package org.coge.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A notebook with its items resolved into Genome and Experiment objects, as returned by CoGe.resolveNotebook().
+ */
+public class NotebookContents {
+
+    Notebook notebook;
+    BatchResult<Genome> genomes;
+    BatchResult<Experiment> experiments;
+    List<Item> otherItems = new ArrayList<Item>();
+
+    NotebookContents(Notebook notebook, BatchResult<Genome> genomes, BatchResult<Experiment> experiments) {
+        this.notebook = notebook;
+        this.genomes = genomes;
+        this.experiments = experiments;
+        if (notebook.getItems()!=null) {
+            for (Item item : notebook.getItems()) {
+                if (!"genome".equals(item.getType()) && !"experiment".equals(item.getType())) otherItems.add(item);
+            }
+        }
+    }
+
+    public Notebook getNotebook() {
+        return notebook;
+    }
+
+    /**
+     * Return the genomes which were fetched, in notebook order.
+     */
+    public List<Genome> getGenomes() {
+        return fetched(genomes);
+    }
+
+    /**
+     * Return the experiments which were fetched, in notebook order.
+     */
+    public List<Experiment> getExperiments() {
+        return fetched(experiments);
+    }
+
+    /**
+     * Return the full genome batch, including the genome items which couldn't be fetched.
+     */
+    public BatchResult<Genome> getGenomeResult() {
+        return genomes;
+    }
+
+    /**
+     * Return the full experiment batch, including the experiment items which couldn't be fetched.
+     */
+    public BatchResult<Experiment> getExperimentResult() {
+        return experiments;
+    }
+
+    /**
+     * Return the items which are neither genomes nor experiments, which are not resolved.
+     */
+    public List<Item> getOtherItems() {
+        return Collections.unmodifiableList(otherItems);
+    }
+
+    /**
+     * Return true if any genome or experiment couldn't be fetched.
+     */
+    public boolean hasFailures() {
+        return genomes.hasFailures() || experiments.hasFailures();
+    }
+
+    public String toString() {
+        return "notebook="+notebook.getId()+";genomes="+genomes.size()+";experiments="+experiments.size()+";otherItems="+otherItems.size()+
+            ";genomeFailures="+genomes.getFailures().keySet()+";experimentFailures="+experiments.getFailures().keySet()+";";
+    }
+
+    static <T> List<T> fetched(BatchResult<T> batch) {
+        List<T> list = new ArrayList<T>();
+        for (T t : batch.results) {
+            if (t!=null) list.add(t);
+        }
+        return list;
+    }
+
+}
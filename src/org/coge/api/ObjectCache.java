@@ -0,0 +1,40 @@
+package org.coge.api;
+
+import us.monoid.json.JSONObject;
+
+/**
+ * A cache of fetched CoGe object records keyed by object type and id, e.g. ("genomes", 16911), plugged into CoGe with setObjectCache().
+ * It holds the JSON records rather than decoded objects, so every fetch still returns a fresh Genome, Organism, etc. which callers may modify.
+ * Implementations must be thread-safe.
+ */
+public interface ObjectCache {
+
+    /**
+     * Return the cached record, or null if it is absent or expired.
+     *
+     * @param objKey the object type, e.g. genomes
+     * @param id the object id
+     */
+    public JSONObject get(String objKey, int id);
+
+    /**
+     * Cache a record. The record must not be modified afterwards.
+     */
+    public void put(String objKey, int id, JSONObject json);
+
+    /**
+     * Drop a record, e.g. after it has been updated or deleted on the server.
+     */
+    public void invalidate(String objKey, int id);
+
+    /**
+     * Drop every record.
+     */
+    public void invalidateAll();
+
+    /**
+     * Return a snapshot of the hit, miss and eviction counts.
+     */
+    public CacheStats getStats();
+
+}
@@ -0,0 +1,361 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An immutable nucleotide sequence packed four bits per base, two bases per byte, instead of one or two bytes per char in a String.
+ * Bases use the IUPAC bit-mask codes (A=1, C=2, G=4, T=8, ambiguity codes are their unions, N=15, gap=0), so complementing a base reverses
+ * its four bits. Runs of lower-case (soft-masked) bases are kept as start/end pairs so toString() reproduces the input's case;
+ * U is read as T and '.' as '-', so those two do not survive the round trip.
+ * Slicing shares the packed bytes; nothing is decoded to a String unless toString() is called.
+ */
+public class PackedSequence implements CharSequence {
+
+    static final String CODES = "-ACMGRSVTWYHKDBN";
+    static final byte[] ENCODE = new byte[128];
+    static {
+        Arrays.fill(ENCODE, (byte)-1);
+        for (int i=0; i<CODES.length(); i++) {
+            ENCODE[CODES.charAt(i)] = (byte)i;
+            ENCODE[Character.toLowerCase(CODES.charAt(i))] = (byte)i;
+        }
+        ENCODE['U'] = ENCODE['T'];
+        ENCODE['u'] = ENCODE['T'];
+        ENCODE['.'] = ENCODE['-'];
+    }
+
+    byte[] data;       // two bases per byte, the first in the high nibble
+    int offset;        // first base of this sequence in data
+    int length;
+    int[] maskStarts;  // soft-masked runs in data coordinates, sorted
+    int[] maskEnds;
+
+    /**
+     * Construct a view over packed data.
+     */
+    PackedSequence(byte[] data, int offset, int length, int[] maskStarts, int[] maskEnds) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.maskStarts = maskStarts;
+        this.maskEnds = maskEnds;
+    }
+
+    /**
+     * Pack the given bases.
+     *
+     * @throws IllegalArgumentException if a character is not an IUPAC nucleotide code or gap
+     */
+    public static PackedSequence valueOf(CharSequence bases) {
+        Builder builder = new Builder(bases.length());
+        builder.append(bases);
+        return builder.build();
+    }
+
+    /**
+     * Return the number of bases.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Return the base at the given index, in upper case, or lower case if it is soft-masked.
+     */
+    public char charAt(int index) {
+        if (index<0 || index>=length) throw new IndexOutOfBoundsException("index "+index+" outside 0-"+length);
+        char c = CODES.charAt(code(offset+index));
+        return isMasked(offset+index) ? Character.toLowerCase(c) : c;
+    }
+
+    /**
+     * Return the IUPAC bit-mask code (0-15) of the base at the given index.
+     */
+    public int codeAt(int index) {
+        if (index<0 || index>=length) throw new IndexOutOfBoundsException("index "+index+" outside 0-"+length);
+        return code(offset+index);
+    }
+
+    /**
+     * Return the bases in [start, end), sharing this sequence's packed data.
+     */
+    public PackedSequence subSequence(int start, int end) {
+        if (start<0 || end>length || start>end) throw new IndexOutOfBoundsException(start+"-"+end+" outside 0-"+length);
+        return new PackedSequence(data, offset+start, end-start, maskStarts, maskEnds);
+    }
+
+    /**
+     * Return the reverse complement, with soft-masking carried over.
+     */
+    public PackedSequence reverseComplement() {
+        Builder builder = new Builder(length);
+        for (int i=length-1; i>=0; i--) {
+            int p = offset+i;
+            int c = code(p);
+            builder.appendCode(Integer.reverse(c)>>>28, isMasked(p));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Return the number of G, C and S (G or C) bases.
+     */
+    public int gcCount() {
+        int count = 0;
+        for (int i=0; i<length; i++) {
+            int c = code(offset+i);
+            if (c==2 || c==4 || c==6) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Return the fraction of bases which are G or C, ignoring ambiguous bases and gaps other than S.
+     */
+    public double gcContent() {
+        int gc = 0;
+        int known = 0;
+        for (int i=0; i<length; i++) {
+            int c = code(offset+i);
+            if (c==2 || c==4 || c==6) {
+                gc++;
+                known++;
+            } else if (c==1 || c==8 || c==9) {
+                known++;
+            }
+        }
+        return known==0 ? 0.0 : (double)gc/known;
+    }
+
+    /**
+     * Return an iterator over the k-mers of this sequence, each encoded two bits per base (A=0, C=1, G=2, T=3) with the first base in the
+     * most significant position. Windows containing anything other than A, C, G or T are skipped.
+     *
+     * @param k the k-mer length, 1 to 32
+     */
+    public KmerIterator kmers(int k) {
+        if (k<1 || k>32) throw new IllegalArgumentException("k must be between 1 and 32: "+k);
+        return new KmerIterator(k);
+    }
+
+    /**
+     * Decode to a String.
+     */
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i=0; i<length; i++) chars[i] = CODES.charAt(code(offset+i));
+        int i = maskIndex(offset);
+        for (; i<maskStarts.length && maskStarts[i]<offset+length; i++) {
+            int from = Math.max(maskStarts[i], offset);
+            int to = Math.min(maskEnds[i], offset+length);
+            for (int p=from; p<to; p++) chars[p-offset] = Character.toLowerCase(chars[p-offset]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Two sequences are equal if they have the same bases and soft-masking.
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof PackedSequence)) return false;
+        PackedSequence that = (PackedSequence) o;
+        if (that.length!=length) return false;
+        for (int i=0; i<length; i++) {
+            if (code(offset+i)!=that.code(that.offset+i) || isMasked(offset+i)!=that.isMasked(that.offset+i)) return false;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int h = length;
+        for (int i=0; i<length; i++) h = 31*h+code(offset+i);
+        return h;
+    }
+
+    /**
+     * Return the code at the given position in data.
+     */
+    int code(int p) {
+        int b = data[p>>>1];
+        return (p&1)==0 ? (b>>>4)&0xF : b&0xF;
+    }
+
+    /**
+     * Return true if the given position in data is soft-masked.
+     */
+    boolean isMasked(int p) {
+        int i = maskIndex(p);
+        return i<maskStarts.length && maskStarts[i]<=p && p<maskEnds[i];
+    }
+
+    /**
+     * Return the index of the first mask run ending after position p.
+     */
+    int maskIndex(int p) {
+        int lo = 0;
+        int hi = maskEnds.length;
+        while (lo<hi) {
+            int mid = (lo+hi)>>>1;
+            if (maskEnds[mid]<=p) lo = mid+1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Iterates the two-bit encoded k-mers of a sequence; position() gives the start of the last one returned.
+     */
+    public class KmerIterator implements PrimitiveIterator.OfLong {
+
+        final int k;
+        final long mask;
+        int next;          // index of the next base to roll in
+        int valid;         // number of consecutive unambiguous bases rolled in
+        long kmer;
+        boolean ready;
+        int position = -1;
+
+        KmerIterator(int k) {
+            this.k = k;
+            this.mask = k==32 ? -1L : (1L<<(2*k))-1;
+        }
+
+        public boolean hasNext() {
+            while (!ready && next<length) {
+                int bits;
+                switch (code(offset+next)) {
+                case 1: bits = 0; break;
+                case 2: bits = 1; break;
+                case 4: bits = 2; break;
+                case 8: bits = 3; break;
+                default: bits = -1;
+                }
+                next++;
+                if (bits<0) {
+                    valid = 0;
+                    kmer = 0;
+                } else {
+                    kmer = ((kmer<<2) | bits) & mask;
+                    if (++valid>=k) ready = true;
+                }
+            }
+            return ready;
+        }
+
+        public long nextLong() {
+            if (!hasNext()) throw new NoSuchElementException();
+            ready = false;
+            position = next-k;
+            return kmer;
+        }
+
+        /**
+         * Return the zero-based start of the k-mer last returned by nextLong().
+         */
+        public int position() {
+            return position;
+        }
+
+    }
+
+    /**
+     * Accumulates bases into a PackedSequence. Also a FastaHandler, collecting the residues of every record in the stream.
+     */
+    public static class Builder implements FastaHandler {
+
+        byte[] data;
+        int length;
+        int[] maskStarts = new int[4];
+        int[] maskEnds = new int[4];
+        int maskCount;
+
+        public Builder() {
+            this(1024);
+        }
+
+        /**
+         * Construct with room for the given number of bases.
+         */
+        public Builder(int capacity) {
+            data = new byte[Math.max(1, (capacity+1)/2)];
+        }
+
+        /**
+         * Append bases given as chars.
+         */
+        public Builder append(CharSequence bases) {
+            for (int i=0; i<bases.length(); i++) append(bases.charAt(i));
+            return this;
+        }
+
+        /**
+         * Append bases given as ASCII bytes.
+         */
+        public Builder append(byte[] buf, int off, int len) {
+            for (int i=off; i<off+len; i++) append((char)(buf[i] & 0xFF));
+            return this;
+        }
+
+        /**
+         * Append one base.
+         */
+        public Builder append(char c) {
+            int code = c<128 ? ENCODE[c] : -1;
+            if (code<0) throw new IllegalArgumentException("not a nucleotide code: '"+c+"' at "+length);
+            return appendCode(code, c>='a');
+        }
+
+        /**
+         * Append a base as its IUPAC bit-mask code.
+         */
+        Builder appendCode(int code, boolean masked) {
+            if ((length>>>1)==data.length) data = Arrays.copyOf(data, data.length*2);
+            if ((length&1)==0) {
+                data[length>>>1] = (byte)(code<<4);
+            } else {
+                data[length>>>1] |= code;
+            }
+            if (masked) {
+                if (maskCount>0 && maskEnds[maskCount-1]==length) {
+                    maskEnds[maskCount-1]++;
+                } else {
+                    if (maskCount==maskStarts.length) {
+                        maskStarts = Arrays.copyOf(maskStarts, maskCount*2);
+                        maskEnds = Arrays.copyOf(maskEnds, maskCount*2);
+                    }
+                    maskStarts[maskCount] = length;
+                    maskEnds[maskCount] = length+1;
+                    maskCount++;
+                }
+            }
+            length++;
+            return this;
+        }
+
+        public void header(String header) {
+        }
+
+        public void sequence(byte[] buf, int off, int len) throws IOException {
+            try {
+                append(buf, off, len);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(ex.getMessage());
+            }
+        }
+
+        public void end() {
+        }
+
+        /**
+         * Return the packed sequence, trimmed to size.
+         */
+        public PackedSequence build() {
+            return new PackedSequence(Arrays.copyOf(data, (length+1)/2), 0, length,
+                                      Arrays.copyOf(maskStarts, maskCount), Arrays.copyOf(maskEnds, maskCount));
+        }
+
+    }
+
+}
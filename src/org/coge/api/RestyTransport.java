@@ -0,0 +1,47 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import us.monoid.web.Content;
+import us.monoid.web.JSONResource;
+import us.monoid.web.Resty;
+
+/**
+ * The original Transport, on Resty, which opens a new URLConnection per request. Resty throws an IOException carrying the error body
+ * for error statuses instead of returning them, so responses from this transport always have a success status.
+ */
+public class RestyTransport implements Transport {
+
+    public TransportResponse execute(String method, String url, Map<String,String> headers, byte[] body) throws IOException {
+        // Resty headers are per instance, so use a fresh one per request
+        Resty resty = new Resty();
+        resty.identifyAsResty(); // why not?
+        String contentType = "application/json";
+        for (Map.Entry<String,String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Content-Type")) {
+                contentType = header.getValue();
+            } else {
+                resty.withHeader(header.getKey(), header.getValue());
+            }
+        }
+        JSONResource resource;
+        if (method.equals("GET")) {
+            resource = resty.json(url);
+        } else if (method.equals("DELETE")) {
+            resource = resty.json(url, Resty.delete());
+        } else if (method.equals("PUT")) {
+            resource = resty.json(url, Resty.put(new Content(contentType, body)));
+        } else if (method.equals("POST")) {
+            resource = resty.json(url, new Content(contentType, body==null ? new byte[0] : body));
+        } else {
+            throw new IOException("RestyTransport does not support "+method);
+        }
+        Map<String,List<String>> responseHeaders = resource.getUrlConnection().getHeaderFields();
+        int status = resource.http()!=null ? resource.http().getResponseCode() : 200;
+        return new TransportResponse(status, responseHeaders==null ? Collections.<String,List<String>>emptyMap() : responseHeaders, resource.stream());
+    }
+
+}
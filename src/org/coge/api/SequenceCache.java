@@ -0,0 +1,173 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local store of whole genomes, each downloaded once and packed into a UCSC .2bit file named id.2bit in the cache directory. The files are
+ * memory-mapped, so subsequence queries cost microseconds instead of a network round trip. Attach it with CoGe.setSequenceCache() and the
+ * subsequence and chromosome fetch methods are served from the cache for every chromosome it holds, and from the server for any other; call
+ * load() to add a genome.
+ * Coordinates follow the CoGe API: one-based and inclusive.
+ */
+public class SequenceCache {
+
+    CoGe coge;
+    Path dir;
+    Map<Integer,TwoBitFile> files = new ConcurrentHashMap<Integer,TwoBitFile>();
+
+    /**
+     * Construct given the CoGe instance used to download genomes and the directory holding the .2bit files, which is created if needed.
+     */
+    public SequenceCache(CoGe coge, Path dir) throws IOException {
+        this.coge = coge;
+        this.dir = dir;
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * Return the .2bit file path for a genome.
+     */
+    public Path getPath(int genomeId) {
+        return dir.resolve(genomeId+".2bit");
+    }
+
+    /**
+     * Return true if the genome has been loaded into the cache.
+     */
+    public boolean contains(int genomeId) {
+        return files.containsKey(genomeId) || Files.exists(getPath(genomeId));
+    }
+
+    /**
+     * Download the genome's FASTA and pack it into the cache, replacing any earlier copy.
+     * Chromosomes are named by the first word of each FASTA header.
+     *
+     * @param genomeId the genome id
+     * @return the number of bases loaded
+     */
+    public long load(int genomeId) throws IOException {
+        TwoBitWriter writer = new TwoBitWriter(getPath(genomeId));
+        long bases;
+        try {
+            bases = coge.readGenomeSequence(genomeId, writer);
+        } finally {
+            writer.close();
+        }
+        TwoBitFile old = files.remove(genomeId);
+        if (old!=null) old.close();
+        return bases;
+    }
+
+    /**
+     * Return true if the genome has been loaded into the cache and has the named chromosome. Cached names are the first word of each FASTA
+     * header, which need not match the names the API uses.
+     */
+    public boolean contains(int genomeId, String chr) throws IOException {
+        return contains(genomeId) && open(genomeId).contains(chr);
+    }
+
+    /**
+     * Drop a genome from the cache and delete its file.
+     */
+    public void remove(int genomeId) throws IOException {
+        TwoBitFile old = files.remove(genomeId);
+        if (old!=null) old.close();
+        Files.deleteIfExists(getPath(genomeId));
+    }
+
+    /**
+     * Return the names of the chromosomes of a cached genome, in FASTA order.
+     */
+    public List<String> getChromosomes(int genomeId) throws IOException {
+        return open(genomeId).getNames();
+    }
+
+    /**
+     * Return the length of a chromosome of a cached genome.
+     */
+    public long getLength(int genomeId, String chr) throws IOException {
+        return open(genomeId).getLength(chr);
+    }
+
+    /**
+     * Return a subsequence of a cached genome, with N runs and soft-masked (lower case) runs restored. The range is clipped to the chromosome.
+     *
+     * @param genomeId the genome id
+     * @param chr the chromosome name
+     * @param start the one-based start
+     * @param stop the one-based, inclusive stop
+     */
+    public String getSequence(int genomeId, String chr, long start, long stop) throws IOException {
+        return new String(getBases(genomeId, chr, start, stop), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Return a subsequence of a cached genome as a PackedSequence, with the range clipped to the chromosome.
+     *
+     * @param genomeId the genome id
+     * @param chr the chromosome name
+     * @param start the one-based start
+     * @param stop the one-based, inclusive stop
+     */
+    public PackedSequence getPackedSequence(int genomeId, String chr, long start, long stop) throws IOException {
+        byte[] bases = getBases(genomeId, chr, start, stop);
+        return new PackedSequence.Builder(bases.length).append(bases, 0, bases.length).build();
+    }
+
+    /**
+     * Return the bases of a subsequence of a cached genome as ASCII bytes, with the range clipped to the chromosome.
+     */
+    byte[] getBases(int genomeId, String chr, long start, long stop) throws IOException {
+        TwoBitFile file = open(genomeId);
+        long length = file.getLength(chr);
+        long from = Math.max(1, start)-1;
+        long to = Math.min(length, stop);
+        if (from>=to) return new byte[0];
+        return file.getBases(chr, from, to);
+    }
+
+    /**
+     * Return a subsequence as a FASTA record with a chr:start-stop header giving the clipped range, the form served in place of the CoGe sequence responses.
+     */
+    byte[] getFasta(int genomeId, String chr, long start, long stop) throws IOException {
+        byte[] bases = getBases(genomeId, chr, start, stop);
+        long from = Math.max(1, start);
+        byte[] header = (">"+chr+":"+from+"-"+(from+bases.length-1)+"\n").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] fasta = new byte[header.length+bases.length+1];
+        System.arraycopy(header, 0, fasta, 0, header.length);
+        System.arraycopy(bases, 0, fasta, header.length, bases.length);
+        fasta[fasta.length-1] = '\n';
+        return fasta;
+    }
+
+    /**
+     * Return the open .2bit file for a cached genome, opening it on first use.
+     */
+    TwoBitFile open(int genomeId) throws IOException {
+        TwoBitFile file = files.get(genomeId);
+        if (file!=null) return file;
+        synchronized (this) {
+            file = files.get(genomeId);
+            if (file==null) {
+                file = new TwoBitFile(getPath(genomeId));
+                files.put(genomeId, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Close all open files.
+     */
+    public void close() throws IOException {
+        for (TwoBitFile file : files.values()) file.close();
+        files.clear();
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.monoid.json.JSONException;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is running, other callers asking for the same key wait for it and share its result
+ * (or exception) instead of making their own. Nothing is kept once the call completes, so this is not a cache.
+ */
+class SingleFlight<K,V> {
+
+    /**
+     * A blocking call whose result can be shared.
+     */
+    interface Call<V> {
+        V call() throws IOException, JSONException;
+    }
+
+    final ConcurrentHashMap<K,CompletableFuture<V>> inFlight = new ConcurrentHashMap<K,CompletableFuture<V>>();
+    final AtomicLong calls = new AtomicLong();
+    final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Run the call for the key, or wait for the one already running and return its result.
+     */
+    V execute(K key, Call<V> call) throws IOException, JSONException {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running!=null) {
+            shared.incrementAndGet();
+            return Workers.get(running);
+        }
+        calls.incrementAndGet();
+        try {
+            V value = call.call();
+            inFlight.remove(key, mine);
+            mine.complete(value);
+            return value;
+        } catch (IOException | JSONException | RuntimeException | Error ex) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Return the number of calls made.
+     */
+    long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Return the number of callers which shared another's call instead of making their own.
+     */
+    long getShared() {
+        return shared.get();
+    }
+
+}
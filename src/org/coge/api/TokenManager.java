@@ -0,0 +1,121 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * A TokenProvider for the client-credentials tokens described by a CoGeParameters, meant to be shared by every CoGe instance and thread.
+ * The current token is held in an immutable object behind a volatile reference, so reading it takes no lock. Once a token has used
+ * REFRESH_FRACTION of its lifetime it is replaced on a background thread while readers go on using it; only a reader finding no token, or an
+ * expired one, waits for a new one. Obtain the shared instance with CoGeParameters.getTokenManager().
+ */
+public class TokenManager implements TokenProvider {
+
+    /**
+     * The fraction of a token's lifetime after which it is refreshed in the background.
+     */
+    public static final double REFRESH_FRACTION = 0.8;
+
+    CoGeParameters params;
+    volatile Token current;
+    final AtomicBoolean refreshing = new AtomicBoolean();
+    ExecutorService refresher;
+
+    /**
+     * Construct for the given parameters, starting from their token if initializeToken() has been called.
+     */
+    TokenManager(CoGeParameters params) {
+        this.params = params;
+        synchronized (params) {
+            if (params.token!=null) current = new Token(params.token, params.tokenIssued, params.tokenExpiration*1000L);
+        }
+    }
+
+    public String acquireToken() throws IOException {
+        Token t = current;
+        long now = System.currentTimeMillis();
+        if (t==null || now>=t.expiresAt) return refreshToken(t==null ? null : t.value);
+        if (now>=t.refreshAt && refreshing.compareAndSet(false, true)) refreshInBackground(t);
+        return t.value;
+    }
+
+    public synchronized String refreshToken(String rejectedToken) throws IOException {
+        Token t = current;
+        if (t!=null && !t.value.equals(rejectedToken) && System.currentTimeMillis()<t.expiresAt) return t.value;
+        return renew().value;
+    }
+
+    /**
+     * Return the current token without obtaining or refreshing one, or null if there is none.
+     */
+    public String peekToken() {
+        Token t = current;
+        return t==null ? null : t.value;
+    }
+
+    /**
+     * Stop the background refresh thread, if it has been started.
+     */
+    public synchronized void close() {
+        if (refresher!=null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * Obtain a new token from the token end point and make it current.
+     */
+    synchronized Token renew() throws IOException {
+        try {
+            JSONObject json = params.requestToken();
+            if (!json.has("access_token")) throw new IOException("No access_token in response from "+params.getTokenURL());
+            long issued = System.currentTimeMillis();
+            long lifetime = json.has("expires_in") ? json.getLong("expires_in")*1000 : 0;
+            Token t = new Token(json.getString("access_token"), issued, lifetime);
+            params.update(json);
+            current = t;
+            return t;
+        } catch (JSONException ex) {
+            throw new IOException("Invalid token response from "+params.getTokenURL()+": "+ex.getMessage(), ex);
+        }
+    }
+
+    synchronized void refreshInBackground(final Token stale) {
+        if (refresher==null) refresher = Workers.newPool(1, "coge-token");
+        refresher.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (current==stale) renew();
+                    } catch (IOException ex) {
+                        // keep the current token; the next reader past refreshAt tries again
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+    }
+
+    /**
+     * An immutable token with the times, in milliseconds, it should be refreshed and it expires.
+     */
+    static class Token {
+        final String value;
+        final long refreshAt;
+        final long expiresAt;
+
+        Token(String value, long issued, long lifetime) {
+            this.value = value;
+            if (lifetime<=0) {
+                refreshAt = Long.MAX_VALUE;
+                expiresAt = Long.MAX_VALUE;
+            } else {
+                refreshAt = issued+(long)(lifetime*REFRESH_FRACTION);
+                expiresAt = issued+lifetime;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.coge.api;
+
+import java.io.IOException;
+
+/**
+ * Supplies the access token CoGe puts on authenticated requests, plugged in with CoGe.setTokenProvider() in place of a fixed token.
+ * Implementations must be thread-safe, and should be cheap to call as it is consulted on every authenticated request.
+ */
+public interface TokenProvider {
+
+    /**
+     * Return a token which is currently valid, obtaining one if need be.
+     */
+    public String acquireToken() throws IOException;
+
+    /**
+     * Replace a token the server has rejected and return its replacement. If the token has already been replaced, e.g. by another thread
+     * which got the same rejection, return the current one without obtaining another.
+     *
+     * @param rejectedToken the token the server answered 401 Unauthorized to
+     */
+    public String refreshToken(String rejectedToken) throws IOException;
+
+}
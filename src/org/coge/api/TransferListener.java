@@ -0,0 +1,19 @@
+package org.coge.api;
+
+/**
+ * Notified by CoGe as each response body is closed, with the bytes received on the wire and the bytes they decoded to.
+ * Called on the thread which closed the body; implementations must be thread-safe and quick.
+ */
+public interface TransferListener {
+
+    /**
+     * Called when a response body has been closed.
+     *
+     * @param url the request URL
+     * @param encoding the response's Content-Encoding, or null if it was not compressed
+     * @param wireBytes the number of (possibly compressed) bytes read from the transport
+     * @param decodedBytes the number of bytes read by the caller after decompression
+     */
+    public void transferred(String url, String encoding, long wireBytes, long decodedBytes);
+
+}
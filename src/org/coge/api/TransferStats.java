@@ -0,0 +1,51 @@
+package org.coge.api;
+
+/**
+ * An immutable snapshot of the response bodies a CoGe instance has read: their number, the bytes received on the wire and the bytes they decoded to.
+ */
+public class TransferStats {
+
+    long responses;
+    long compressedResponses;
+    long wireBytes;
+    long decodedBytes;
+
+    public TransferStats(long responses, long compressedResponses, long wireBytes, long decodedBytes) {
+        this.responses = responses;
+        this.compressedResponses = compressedResponses;
+        this.wireBytes = wireBytes;
+        this.decodedBytes = decodedBytes;
+    }
+
+    public long getResponses() {
+        return responses;
+    }
+
+    /**
+     * Return the number of responses which arrived gzip or deflate encoded.
+     */
+    public long getCompressedResponses() {
+        return compressedResponses;
+    }
+
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * Return decodedBytes/wireBytes, or 1 if nothing has been received.
+     */
+    public double getCompressionRatio() {
+        return wireBytes==0 ? 1.0 : (double)decodedBytes/wireBytes;
+    }
+
+    public String toString() {
+        return "responses="+responses+";compressedResponses="+compressedResponses+";wireBytes="+wireBytes+";decodedBytes="+decodedBytes+
+            ";compressionRatio="+String.format("%.2f", getCompressionRatio())+";";
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The HTTP layer under CoGe and CoGeParameters. HttpClientTransport is the default; RestyTransport is the original Resty path, kept as a
+ * fallback. Implementations must be safe for concurrent use.
+ */
+public interface Transport {
+
+    /**
+     * Send a request and return the response, whatever its status. The caller must close the response.
+     *
+     * @param method the HTTP method, e.g. GET, PUT, POST or DELETE
+     * @param url the full URL
+     * @param headers the request headers, including Content-Type if there is a body
+     * @param body the request body, or null for none
+     */
+    public TransportResponse execute(String method, String url, Map<String,String> headers, byte[] body) throws IOException;
+
+}
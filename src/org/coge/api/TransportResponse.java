@@ -0,0 +1,63 @@
+package org.coge.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTTP response returned by a Transport: the status, the headers (names in lower case) and the body as a stream.
+ */
+public class TransportResponse implements Closeable {
+
+    int status;
+    Map<String,String> headers;
+    InputStream body;
+
+    /**
+     * Construct given the status, headers and body. Header names are lower-cased and multiple values joined with commas.
+     */
+    public TransportResponse(int status, Map<String,List<String>> headers, InputStream body) {
+        this.status = status;
+        this.headers = new LinkedHashMap<String,String>();
+        for (Map.Entry<String,List<String>> entry : headers.entrySet()) {
+            if (entry.getKey()==null || entry.getValue()==null) continue;
+            this.headers.put(entry.getKey().toLowerCase(), String.join(",", entry.getValue()));
+        }
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Return the value of the named header, or null if it is absent.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public Map<String,String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Return the body stream, which may be empty but never null.
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    void setBody(InputStream body) {
+        this.body = body;
+    }
+
+    public void close() throws IOException {
+        body.close();
+    }
+
+}
@@ -0,0 +1,196 @@
+package org.coge.api;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Random access to a UCSC .2bit file, as written by TwoBitWriter or by the UCSC tools. Each sequence's packed bases are memory-mapped the first
+ * time it is queried, so subsequence reads are plain memory accesses. Instances are safe for concurrent readers.
+ */
+class TwoBitFile {
+
+    static final char[] BASES = { 'T', 'C', 'A', 'G' };
+
+    Path path;
+    FileChannel channel;
+    ByteOrder order;
+    Map<String,Long> offsets = new LinkedHashMap<String,Long>();
+    Map<String,Record> records = new ConcurrentHashMap<String,Record>();
+
+    /**
+     * Open the file and read its index.
+     */
+    TwoBitFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = read(0, 16, ByteOrder.LITTLE_ENDIAN);
+        int signature = header.getInt();
+        if (signature==TwoBitWriter.SIGNATURE) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (Integer.reverseBytes(signature)==TwoBitWriter.SIGNATURE) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            channel.close();
+            throw new IOException(path+" is not a .2bit file");
+        }
+        header.order(order);
+        int version = header.getInt();
+        int count = header.getInt();
+        long pos = 16;
+        for (int i=0; i<count; i++) {
+            int nameSize = read(pos, 1, order).get() & 0xFF;
+            ByteBuffer entry = read(pos+1, nameSize+(version==0 ? 4 : 8), order);
+            byte[] name = new byte[nameSize];
+            entry.get(name);
+            long offset = version==0 ? entry.getInt() & 0xFFFFFFFFL : entry.getLong();
+            offsets.put(new String(name, StandardCharsets.ISO_8859_1), offset);
+            pos += 1+entry.capacity();
+        }
+    }
+
+    /**
+     * Return the sequence names in file order.
+     */
+    List<String> getNames() {
+        return new ArrayList<String>(offsets.keySet());
+    }
+
+    /**
+     * Return true if the file contains the named sequence.
+     */
+    boolean contains(String name) {
+        return offsets.containsKey(name);
+    }
+
+    /**
+     * Return the length of the named sequence.
+     */
+    long getLength(String name) throws IOException {
+        return record(name).size;
+    }
+
+    /**
+     * Return the bases in [start, end) of the named sequence, zero-based, with N runs restored and soft-masked runs in lower case.
+     */
+    byte[] getBases(String name, long start, long end) throws IOException {
+        Record r = record(name);
+        if (start<0 || end>r.size || start>end) throw new IndexOutOfBoundsException(name+":"+start+"-"+end+" outside 0-"+r.size);
+        int len = (int)(end-start);
+        byte[] bases = new byte[len];
+        MappedByteBuffer dna = r.dna;
+        for (int i=0; i<len; i++) {
+            long pos = start+i;
+            int b = dna.get((int)(pos>>>2));
+            bases[i] = (byte) BASES[(b>>>(6-2*(int)(pos&3))) & 3];
+        }
+        fill(r.nStarts, r.nSizes, start, end, bases, true);
+        fill(r.maskStarts, r.maskSizes, start, end, bases, false);
+        return bases;
+    }
+
+    /**
+     * Close the file. Mapped regions are released when they are garbage collected.
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Apply the blocks overlapping [start, end) to bases: N for N-blocks, or lower case for mask blocks.
+     */
+    static void fill(int[] starts, int[] sizes, long start, long end, byte[] bases, boolean n) {
+        // the blocks are sorted and disjoint; back up to the last block starting at or before start
+        int i = Arrays.binarySearch(starts, (int)Math.min(start, Integer.MAX_VALUE));
+        if (i<0) i = Math.max(0, -i-2);
+        for (; i<starts.length && (starts[i] & 0xFFFFFFFFL)<end; i++) {
+            long from = Math.max(start, starts[i] & 0xFFFFFFFFL);
+            long to = Math.min(end, (starts[i] & 0xFFFFFFFFL)+(sizes[i] & 0xFFFFFFFFL));
+            for (long p=from; p<to; p++) {
+                int k = (int)(p-start);
+                bases[k] = n ? (byte)'N' : (byte)(bases[k] | 0x20);
+            }
+        }
+    }
+
+    /**
+     * Return the record for the named sequence, loading it on first use.
+     */
+    Record record(String name) throws IOException {
+        Record r = records.get(name);
+        return r!=null ? r : load(name);
+    }
+
+    /**
+     * Read a record's header and map its bases.
+     */
+    synchronized Record load(String name) throws IOException {
+        Record r = records.get(name);
+        if (r!=null) return r;
+        Long offset = offsets.get(name);
+        if (offset==null) throw new IOException("sequence "+name+" not found in "+path);
+        r = new Record();
+        long pos = offset;
+        ByteBuffer buf = read(pos, 8, order);
+        r.size = buf.getInt() & 0xFFFFFFFFL;
+        int nCount = buf.getInt();
+        pos += 8;
+        r.nStarts = readInts(pos, nCount);
+        r.nSizes = readInts(pos+4L*nCount, nCount);
+        pos += 8L*nCount;
+        int maskCount = read(pos, 4, order).getInt();
+        pos += 4;
+        r.maskStarts = readInts(pos, maskCount);
+        r.maskSizes = readInts(pos+4L*maskCount, maskCount);
+        pos += 8L*maskCount+4; // skip reserved
+        r.dna = channel.map(FileChannel.MapMode.READ_ONLY, pos, (r.size+3)/4);
+        records.put(name, r);
+        return r;
+    }
+
+    /**
+     * Read count ints at pos.
+     */
+    int[] readInts(long pos, int count) throws IOException {
+        int[] ints = new int[count];
+        read(pos, 4*count, order).asIntBuffer().get(ints);
+        return ints;
+    }
+
+    /**
+     * Read len bytes at pos into a buffer of the given byte order, positioned at zero.
+     */
+    ByteBuffer read(long pos, int len, ByteOrder order) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len).order(order);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos+buf.position())<0) throw new EOFException(path+" is truncated");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * A sequence's size, N and mask blocks, and mapped packed bases.
+     */
+    static class Record {
+        long size;
+        int[] nStarts;
+        int[] nSizes;
+        int[] maskStarts;
+        int[] maskSizes;
+        MappedByteBuffer dna;
+    }
+
+}
@@ -0,0 +1,251 @@
+package org.coge.api;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A FastaHandler which packs the incoming records into a UCSC .2bit file: two bits per base, with runs of N and runs of lower-case (soft-masked)
+ * bases recorded as blocks. The .2bit index precedes the data, so bases are packed into a temporary file while the FASTA streams in and the
+ * target is assembled when end() is called.
+ */
+class TwoBitWriter implements FastaHandler {
+
+    static final int SIGNATURE = 0x1A412743;
+
+    Path target;
+    Path packed;
+    OutputStream out;
+    List<Record> records = new ArrayList<Record>();
+    Record current;
+    int pending;     // bases packed into the current byte
+    int pendingCount;
+
+    /**
+     * Construct to write the given target file.
+     */
+    TwoBitWriter(Path target) throws IOException {
+        this.target = target;
+        this.packed = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".dna");
+        this.out = new BufferedOutputStream(Files.newOutputStream(packed), FastaReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    public void header(String header) throws IOException {
+        finishRecord();
+        String name = header.split("\\s+")[0];
+        if (name.length()>255) name = name.substring(0, 255);
+        current = new Record(name);
+        records.add(current);
+    }
+
+    public void sequence(byte[] buf, int off, int len) throws IOException {
+        if (current==null) header("sequence");
+        Record r = current;
+        for (int i=off; i<off+len; i++) {
+            byte b = buf[i];
+            boolean lower = b>='a' && b<='z';
+            int code;
+            switch (lower ? b-32 : b) {
+            case 'T': code = 0; break;
+            case 'C': code = 1; break;
+            case 'A': code = 2; break;
+            case 'G': code = 3; break;
+            default:  code = -1;
+            }
+            r.nBlocks.extend(code<0, r.size);
+            r.maskBlocks.extend(lower, r.size);
+            pending = (pending<<2) | (code<0 ? 0 : code);
+            if (++pendingCount==4) {
+                out.write(pending);
+                pending = 0;
+                pendingCount = 0;
+            }
+            r.size++;
+        }
+    }
+
+    public void end() throws IOException {
+        finishRecord();
+        out.close();
+        try {
+            write();
+        } finally {
+            Files.deleteIfExists(packed);
+        }
+    }
+
+    /**
+     * Close and delete the temporary file of packed bases. Safe to call after end(), and needed when the FASTA fails part way through.
+     */
+    void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(packed);
+        }
+    }
+
+    /**
+     * Flush the partial last byte of the current record.
+     */
+    void finishRecord() throws IOException {
+        if (current==null) return;
+        if (pendingCount>0) {
+            out.write(pending<<(2*(4-pendingCount)));
+            pending = 0;
+            pendingCount = 0;
+        }
+        if (current.size>0xFFFFFFFFL) throw new IOException("sequence "+current.name+" is too long for the .2bit format: "+current.size);
+        current = null;
+    }
+
+    /**
+     * Assemble the header, index, record headers and packed bases into a temporary file and move it onto the target.
+     */
+    void write() throws IOException {
+        // record offsets, which need 64 bits (version 1) once the file passes 4 GB
+        long indexSize = 0;
+        for (Record r : records) indexSize += 1+r.name.getBytes(StandardCharsets.ISO_8859_1).length+8;
+        long dataSize = 0;
+        for (Record r : records) dataSize += r.headerSize()+r.packedSize();
+        int version = 16+indexSize+dataSize>0xFFFFFFFFL ? 1 : 0;
+        if (version==0) indexSize -= 4*records.size();
+        long offset = 16+indexSize;
+        for (Record r : records) {
+            r.offset = offset;
+            offset += r.headerSize()+r.packedSize();
+        }
+
+        Path part = CoGe.createPartFile(target);
+        try {
+            FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            FileChannel dna = FileChannel.open(packed, StandardOpenOption.READ);
+            try {
+                ByteBuffer buf = ByteBuffer.allocate(FastaReader.DEFAULT_CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(SIGNATURE).putInt(version).putInt(records.size()).putInt(0);
+                for (Record r : records) {
+                    byte[] name = r.name.getBytes(StandardCharsets.ISO_8859_1);
+                    ensure(channel, buf, 1+name.length+8);
+                    buf.put((byte)name.length).put(name);
+                    if (version==0) buf.putInt((int)r.offset); else buf.putLong(r.offset);
+                }
+                long dnaPos = 0;
+                for (Record r : records) {
+                    ensure(channel, buf, 16);
+                    buf.putInt((int)r.size);
+                    r.nBlocks.write(channel, buf);
+                    r.maskBlocks.write(channel, buf);
+                    ensure(channel, buf, 4);
+                    buf.putInt(0);
+                    flush(channel, buf);
+                    long n = r.packedSize();
+                    long done = 0;
+                    while (done<n) done += dna.transferTo(dnaPos+done, n-done, channel);
+                    dnaPos += n;
+                }
+                flush(channel, buf);
+            } finally {
+                dna.close();
+                channel.close();
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /**
+     * Make room for len bytes in the buffer, flushing it to the channel if needed.
+     */
+    static void ensure(FileChannel channel, ByteBuffer buf, int len) throws IOException {
+        if (buf.remaining()<len) flush(channel, buf);
+    }
+
+    /**
+     * Write out and clear the buffer.
+     */
+    static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * A sequence being packed.
+     */
+    static class Record {
+        String name;
+        long size;
+        long offset;
+        Blocks nBlocks = new Blocks();
+        Blocks maskBlocks = new Blocks();
+
+        Record(String name) {
+            this.name = name;
+        }
+
+        long headerSize() {
+            return 4+nBlocks.byteSize()+maskBlocks.byteSize()+4;
+        }
+
+        long packedSize() {
+            return (size+3)/4;
+        }
+    }
+
+    /**
+     * Runs of bases as parallel start and size arrays, grown one base at a time.
+     */
+    static class Blocks {
+        int[] starts = new int[16];
+        int[] sizes = new int[16];
+        int count;
+
+        /**
+         * Add the base at pos to the last run if inside is set, starting a new run if the previous base wasn't in one.
+         */
+        void extend(boolean inside, long pos) {
+            if (!inside) return;
+            if (count>0 && (long)starts[count-1]+sizes[count-1]==pos) {
+                sizes[count-1]++;
+                return;
+            }
+            if (count==starts.length) {
+                starts = Arrays.copyOf(starts, count*2);
+                sizes = Arrays.copyOf(sizes, count*2);
+            }
+            starts[count] = (int)pos;
+            sizes[count] = 1;
+            count++;
+        }
+
+        long byteSize() {
+            return 4+8L*count;
+        }
+
+        void write(FileChannel channel, ByteBuffer buf) throws IOException {
+            ensure(channel, buf, 4);
+            buf.putInt(count);
+            for (int i=0; i<count; i++) {
+                ensure(channel, buf, 4);
+                buf.putInt(starts[i]);
+            }
+            for (int i=0; i<count; i++) {
+                ensure(channel, buf, 4);
+                buf.putInt(sizes[i]);
+            }
+        }
+    }
+
+}
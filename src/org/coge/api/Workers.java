@@ -0,0 +1,71 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import us.monoid.json.JSONException;
+
+/**
+ * Bounded worker pools for the parallel CoGe calls, and unwrapping of their results back into the checked exceptions the API throws.
+ */
+class Workers {
+
+    /**
+     * Return a fixed pool of daemon threads named name-1, name-2, etc. The caller must shut it down.
+     */
+    static ExecutorService newPool(int threads, final String name) {
+        if (threads<1) throw new IllegalArgumentException("threads must be positive: "+threads);
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name+"-"+count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    /**
+     * Interrupt a pool's tasks and wait for them to finish, so nothing they write turns up after the caller has cleaned up. An interrupt
+     * while waiting is kept for the caller, not acted on.
+     */
+    static void shutdown(ExecutorService pool) {
+        pool.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Wait for a future, rethrowing an IOException, JSONException or unchecked exception thrown by its task as is.
+     */
+    static <T> T get(Future<T> future) throws IOException, JSONException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for CoGe response");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof JSONException) throw (JSONException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+}
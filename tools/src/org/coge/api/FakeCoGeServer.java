@@ -0,0 +1,666 @@
+package org.coge.api;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * A local stand-in for the CoGe API, for exercising CoGe offline: load testing concurrency, caching and streaming without the live service.
+ * It answers the endpoints the client uses (organisms, genomes, features, sequences, experiments, notebooks, groups, jobs and irods/list)
+ * from SyntheticGenomes, so genomes of any size and gene density are served without being held in memory. Records are numbered:
+ * <ul>
+ * <li>genomes 1 to genomes, each belonging to organism (id-1)/genomesPerOrganism+1;</li>
+ * <li>experiments id*100+1 to id*100+experimentsPerGenome for each genome id;</li>
+ * <li>notebook n, for each organism n, listing the organism's genomes and their experiments;</li>
+ * <li>groups 1 to GROUPS;</li>
+ * <li>genes as described in SyntheticGenome.</li>
+ * </ul>
+ * Responses carry ETags and are gzipped when the client accepts it. Latency, failures and a concurrency limit can be injected. Adding a
+ * genome or features starts a job which completes after jobMillis, a completed genome job yielding a new genome.
+ * Configure before start(); the counters are thread-safe.
+ */
+public class FakeCoGeServer {
+
+    public static final int GROUPS = 4;
+    public static final int SEARCH_LIMIT = 1000;
+
+    int genomes = 100;
+    int genomesPerOrganism = 4;
+    int experimentsPerGenome = 2;
+    int chromosomes = 10;
+    int chromosomeLength = 1000000;
+    double genesPerMegabase = 40;
+    long minLatencyMillis;
+    long maxLatencyMillis;
+    double errorRate;
+    int errorStatus = 503;
+    int maxConcurrentRequests;
+    long jobMillis = 1000;
+
+    HttpServer server;
+    ExecutorService executor;
+    final Map<Integer,SyntheticGenome> genomeCache = new ConcurrentHashMap<Integer,SyntheticGenome>();
+    final Map<Integer,LoadJob> jobs = new ConcurrentHashMap<Integer,LoadJob>();
+    final Set<Integer> created = ConcurrentHashMap.newKeySet();
+    final AtomicInteger nextJob = new AtomicInteger();
+    final AtomicInteger nextGenome = new AtomicInteger(genomes);
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger peakConcurrency = new AtomicInteger();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong injectedErrors = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Set the number of genomes served, and how many belong to each organism.
+     */
+    public FakeCoGeServer setGenomes(int genomes, int genomesPerOrganism) {
+        if (genomes<1 || genomesPerOrganism<1) throw new IllegalArgumentException("genomes and genomesPerOrganism must be positive");
+        if (genomes>=Integer.MAX_VALUE/SyntheticGenome.FEATURE_ID_SPAN/2) throw new IllegalArgumentException("too many genomes for their feature ids: "+genomes);
+        this.genomes = genomes;
+        this.genomesPerOrganism = genomesPerOrganism;
+        nextGenome.set(genomes);
+        return this;
+    }
+
+    /**
+     * Set the size of each genome: the number of chromosomes, the length of the longest, and the gene density.
+     */
+    public FakeCoGeServer setGenomeSize(int chromosomes, int chromosomeLength, double genesPerMegabase) {
+        this.chromosomes = chromosomes;
+        this.chromosomeLength = chromosomeLength;
+        this.genesPerMegabase = genesPerMegabase;
+        genomeCache.clear();
+        return this;
+    }
+
+    public FakeCoGeServer setExperimentsPerGenome(int experimentsPerGenome) {
+        this.experimentsPerGenome = experimentsPerGenome;
+        return this;
+    }
+
+    /**
+     * Delay each response by a time drawn uniformly from minMillis to maxMillis.
+     */
+    public FakeCoGeServer setLatency(long minMillis, long maxMillis) {
+        if (minMillis<0 || maxMillis<minMillis) throw new IllegalArgumentException("latency must satisfy 0<=min<=max");
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Fail the given fraction of requests, chosen at random, with the given HTTP status, e.g. 500 or 503.
+     */
+    public FakeCoGeServer setErrors(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Answer requests beyond this many in progress with 429 Too Many Requests, as an overloaded server would; zero for no limit.
+     */
+    public FakeCoGeServer setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Set how long a load job runs before completing.
+     */
+    public FakeCoGeServer setJobMillis(long jobMillis) {
+        this.jobMillis = jobMillis;
+        return this;
+    }
+
+    /**
+     * Start on a free loopback port, returning the base URL to give CoGe.
+     */
+    public String start() throws IOException {
+        return start(0);
+    }
+
+    /**
+     * Start on the given loopback port, returning the base URL to give CoGe.
+     */
+    public String start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+                Thread t = new Thread(runnable, "fake-coge");
+                t.setDaemon(true);
+                return t;
+            });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return getBaseURL();
+    }
+
+    public String getBaseURL() {
+        return "http://"+server.getAddress().getHostString()+":"+server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Return the number of requests failed by the injected error rate.
+     */
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Return the number of requests rejected with 429 for exceeding the concurrency limit.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * Return the most requests seen in progress at once.
+     */
+    public int getPeakConcurrency() {
+        return peakConcurrency.get();
+    }
+
+    public String toString() {
+        return "requests="+requests.get()+";injectedErrors="+injectedErrors.get()+";rejected="+rejected.get()+";notModified="+notModified.get()+
+            ";peakConcurrency="+peakConcurrency.get()+";";
+    }
+
+    /**
+     * Return the synthetic genome with the given id, or null if there is none.
+     */
+    public SyntheticGenome getGenome(int id) {
+        if (id<1 || (id>genomes && !created.contains(id))) return null;
+        return genomeCache.computeIfAbsent(id, key -> new SyntheticGenome(key, chromosomes, chromosomeLength, genesPerMegabase));
+    }
+
+    int organismCount() {
+        return (genomes+genomesPerOrganism-1)/genomesPerOrganism;
+    }
+
+    int organismOf(int genomeId) {
+        return genomeId>genomes ? 1 : (genomeId-1)/genomesPerOrganism+1;
+    }
+
+    ////////// Request handling //////////
+
+    /**
+     * A response body, written once the headers have been sent.
+     */
+    interface Body {
+        void write(OutputStream out) throws IOException, JSONException;
+    }
+
+    /**
+     * A failed request, answered with a CoGe error object.
+     */
+    static class Failure extends Exception {
+        final int status;
+        final String type;
+
+        Failure(int status, String type, String message) {
+            super(message);
+            this.status = status;
+            this.type = type;
+        }
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int now = active.incrementAndGet();
+        peakConcurrency.accumulateAndGet(now, Math::max);
+        try {
+            if (maxConcurrentRequests>0 && now>maxConcurrentRequests) {
+                rejected.incrementAndGet();
+                throw new Failure(429, "Overload", "too many concurrent requests");
+            }
+            if (maxLatencyMillis>0) Thread.sleep(ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis+1));
+            if (errorRate>0 && ThreadLocalRandom.current().nextDouble()<errorRate) {
+                injectedErrors.incrementAndGet();
+                throw new Failure(errorStatus, "Error", "injected failure");
+            }
+            route(exchange);
+        } catch (Failure failure) {
+            sendError(exchange, failure);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (JSONException | RuntimeException ex) {
+            sendError(exchange, new Failure(500, "Error", ex.toString()));
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    void route(HttpExchange exchange) throws IOException, JSONException, Failure {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+", "").split("/");
+        Map<String,String> query = query(exchange.getRequestURI().getRawQuery());
+        String objKey = path[0];
+        if (!method.equals("GET")) {
+            authorize(query);
+            modify(exchange, method, path);
+            return;
+        }
+        if (path.length==3 && path[1].equals("search")) {
+            sendJSON(exchange, search(objKey, path[2]));
+            return;
+        }
+        if (objKey.equals("irods") && path.length>=2 && path[1].equals("list")) {
+            authorize(query);
+            sendJSON(exchange, listDataStore(String.join("/", Arrays.copyOfRange(path, 2, path.length))));
+            return;
+        }
+        if (path.length<2) throw notFound(objKey);
+        int id = parseId(path[1]);
+        if (objKey.equals("jobs")) {
+            authorize(query);
+            sendJSON(exchange, job(id));
+            return;
+        }
+        if (objKey.equals("genomes") && path.length>2) {
+            final SyntheticGenome genome = genome(id);
+            if (path[2].equals("features") && path.length==4) {
+                final String type = path[3];
+                send(exchange, "application/json", out -> writeFeatures(genome, type, out));
+            } else if (path[2].equals("sequence") && path.length==3) {
+                send(exchange, "text/plain", out -> {
+                        for (int c=0; c<genome.getChromosomeCount(); c++) genome.writeFasta(c, out);
+                    });
+            } else if (path[2].equals("sequence") && path.length==4) {
+                final int c = genome.chromosome(path[3]);
+                if (c<0) throw notFound("chromosome "+path[3]);
+                final int start = Math.max(1, query.containsKey("start") ? parseId(query.get("start")) : 1);
+                final int stop = Math.min(genome.getChromosomeLength(c), query.containsKey("stop") ? parseId(query.get("stop")) : genome.getChromosomeLength(c));
+                final String header = query.containsKey("start") || query.containsKey("stop") ? path[3]+":"+start+"-"+stop : path[3];
+                send(exchange, "text/plain", out -> genome.writeFasta(header, c, start, stop, false, out));
+            } else {
+                throw notFound(String.join("/", path));
+            }
+            return;
+        }
+        if (objKey.equals("features") && path.length==3 && path[2].equals("sequence")) {
+            final JSONObject gene = feature(id);
+            final SyntheticGenome genome = genome(id/SyntheticGenome.FEATURE_ID_SPAN);
+            final int c = genome.chromosome(gene.getString("chromosome"));
+            send(exchange, "text/plain", out -> genome.writeFasta(gene.getString("name"), c, gene.getInt("start"), gene.getInt("stop"), gene.getInt("strand")<0, out));
+            return;
+        }
+        if (path.length!=2) throw notFound(String.join("/", path));
+        sendJSON(exchange, fetch(objKey, id));
+    }
+
+    /**
+     * Answer a PUT, POST or DELETE.
+     */
+    void modify(HttpExchange exchange, String method, String[] path) throws IOException, JSONException, Failure {
+        exchange.getRequestBody().readAllBytes();
+        JSONObject response = new JSONObject().put("success", true);
+        if (method.equals("PUT") && path.length==1 && (path[0].equals("genomes") || path[0].equals("features"))) {
+            int jobId = nextJob.incrementAndGet();
+            jobs.put(jobId, new LoadJob(jobId, path[0].equals("genomes"), System.currentTimeMillis()));
+            response.put("id", jobId);
+        } else if (method.equals("PUT") && path.length==1 && path[0].equals("organisms")) {
+            response.put("id", organismCount()+nextJob.incrementAndGet());
+        } else if (method.equals("POST") && path.length==4 && path[0].equals("notebooks") && path[2].equals("items") && path[3].equals("add")) {
+            fetch("notebooks", parseId(path[1]));
+        } else if (method.equals("DELETE") && path.length==2 && path[0].equals("genomes")) {
+            genome(parseId(path[1]));
+        } else {
+            throw new Failure(405, "Method", method+" not supported on "+String.join("/", path));
+        }
+        sendJSON(exchange, response);
+    }
+
+    /**
+     * Return the record for an object, as from GET objKey/id.
+     */
+    JSONObject fetch(String objKey, int id) throws JSONException, Failure {
+        switch (objKey) {
+        case "organisms":
+            return organism(id, true);
+        case "genomes":
+            return genome(id).toJSON(organism(organismOf(id), false), experimentIds(id));
+        case "experiments":
+            return experiment(id);
+        case "notebooks":
+            return notebook(id);
+        case "groups":
+            return group(id);
+        case "features":
+            JSONObject gene = feature(id);
+            StringBuilder sequence = new StringBuilder();
+            SyntheticGenome genome = genome(id/SyntheticGenome.FEATURE_ID_SPAN);
+            int c = genome.chromosome(gene.getString("chromosome"));
+            for (int pos=gene.getInt("start"); pos<=gene.getInt("stop"); pos++) sequence.append((char)genome.base(c, pos));
+            return gene.put("sequence", sequence.toString());
+        default:
+            throw notFound(objKey);
+        }
+    }
+
+    JSONObject search(String objKey, String term) throws JSONException, Failure {
+        String lower = term.toLowerCase();
+        JSONArray found = new JSONArray();
+        if (objKey.equals("features")) {
+            // gene names start SYN<genome id>.
+            if (lower.startsWith("syn")) {
+                int dot = lower.indexOf('.');
+                SyntheticGenome genome = getGenome(parseInt(lower.substring(3, dot<0 ? lower.length() : dot)));
+                for (int i=0; genome!=null && i<genome.getGeneCount() && found.length()<SEARCH_LIMIT; i++) {
+                    JSONObject gene = genome.gene(i);
+                    if (gene.getString("name").toLowerCase().startsWith(lower)) found.put(gene);
+                }
+            }
+        } else {
+            int count;
+            switch (objKey) {
+            case "organisms": count = organismCount(); break;
+            case "genomes": count = genomes; break;
+            case "experiments": count = genomes*100+experimentsPerGenome; break;
+            case "notebooks": count = organismCount(); break;
+            case "groups": count = GROUPS; break;
+            default: throw notFound(objKey);
+            }
+            for (int id=1; id<=count && found.length()<SEARCH_LIMIT; id++) {
+                JSONObject record;
+                try {
+                    record = objKey.equals("genomes") ? summary(id) : fetch(objKey, id);
+                } catch (Failure ex) {
+                    continue;  // not every experiment id is used
+                }
+                if (record.getString("name").toLowerCase().contains(lower)) found.put(record);
+            }
+        }
+        return new JSONObject().put(objKey, found);
+    }
+
+    JSONObject summary(int genomeId) throws JSONException, Failure {
+        SyntheticGenome genome = genome(genomeId);
+        return new JSONObject().put("id", genomeId).put("name", genome.getName()).put("description", "").put("deleted", false);
+    }
+
+    JSONObject organism(int id, boolean withGenomes) throws JSONException, Failure {
+        if (id<1 || id>organismCount()) throw notFound("organism "+id);
+        JSONObject json = new JSONObject().put("id", id).put("name", "Synthetic organism "+id).put("description", "Synthetica; species "+id);
+        if (withGenomes) {
+            JSONArray ids = new JSONArray();
+            for (int g=(id-1)*genomesPerOrganism+1; g<=Math.min(genomes, id*genomesPerOrganism); g++) ids.put(String.valueOf(g));
+            json.put("genomes", ids);
+        }
+        return json;
+    }
+
+    JSONArray experimentIds(int genomeId) {
+        JSONArray ids = new JSONArray();
+        for (int k=1; k<=experimentsPerGenome; k++) ids.put(genomeId*100+k);
+        return ids;
+    }
+
+    JSONObject experiment(int id) throws JSONException, Failure {
+        int genomeId = id/100;
+        int k = id%100;
+        if (k<1 || k>experimentsPerGenome) throw notFound("experiment "+id);
+        genome(genomeId);
+        return new JSONObject().put("id", id).put("name", "Synthetic experiment "+id).put("description", "")
+            .put("version", "1").put("genome_id", genomeId).put("source", "FakeCoGeServer").put("restricted", false)
+            .put("types", new JSONArray().put(new JSONObject().put("name", "quant").put("description", "quantitative")));
+    }
+
+    JSONObject notebook(int id) throws JSONException, Failure {
+        JSONObject organism = organism(id, true);
+        JSONArray items = new JSONArray();
+        JSONArray genomeIds = organism.getJSONArray("genomes");
+        for (int i=0; i<genomeIds.length(); i++) {
+            int genomeId = Integer.parseInt(genomeIds.getString(i));
+            items.put(new JSONObject().put("id", genomeId).put("type", "genome"));
+            JSONArray experiments = experimentIds(genomeId);
+            for (int k=0; k<experiments.length(); k++) items.put(new JSONObject().put("id", experiments.getInt(k)).put("type", "experiment"));
+        }
+        return new JSONObject().put("id", id).put("name", "Synthetic notebook "+id).put("description", "")
+            .put("type", "mixed").put("restricted", false).put("items", items);
+    }
+
+    JSONObject group(int id) throws JSONException, Failure {
+        if (id<1 || id>GROUPS) throw notFound("group "+id);
+        JSONArray users = new JSONArray();
+        for (int u=1; u<=id*3; u++) users.put(u);
+        return new JSONObject().put("id", id).put("name", "Synthetic group "+id).put("description", "").put("role", "reader").put("users", users);
+    }
+
+    JSONObject feature(int id) throws JSONException, Failure {
+        SyntheticGenome genome = genome(id/SyntheticGenome.FEATURE_ID_SPAN);
+        int index = id%SyntheticGenome.FEATURE_ID_SPAN-1;
+        if (index<0 || index>=genome.getGeneCount()) throw notFound("feature "+id);
+        return genome.gene(index);
+    }
+
+    SyntheticGenome genome(int id) throws Failure {
+        SyntheticGenome genome = getGenome(id);
+        if (genome==null) throw notFound("genome "+id);
+        return genome;
+    }
+
+    /**
+     * Stream a features response, one gene at a time; only genes are synthesised, so other types are empty.
+     */
+    void writeFeatures(SyntheticGenome genome, String type, OutputStream out) throws IOException, JSONException {
+        out.write(("{\"id\":"+genome.getId()+",\"features\":[").getBytes(StandardCharsets.UTF_8));
+        if (type.equals("gene")) {
+            for (int i=0; i<genome.getGeneCount(); i++) {
+                if (i>0) out.write(',');
+                out.write(genome.gene(i).toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        out.write("]}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A directory tree three levels deep below any path, four directories wide, with a few genome and annotation files in each directory.
+     */
+    JSONObject listDataStore(String path) throws JSONException {
+        String dir = "/"+path.replaceAll("^/+|/+$", "");
+        // the depth below wherever the listing started is the number of generated directories at the end of the path
+        int depth = 0;
+        for (String[] segments = dir.split("/"); depth<segments.length && segments[segments.length-1-depth].matches("d\\d+"); ) depth++;
+        JSONArray items = new JSONArray();
+        int order = 0;
+        if (depth<3) {
+            for (int d=1; d<=4; d++) {
+                items.put(new JSONObject().put("name", "d"+d+"/").put("type", "directory").put("path", dir+"/d"+d).put("order", String.valueOf(++order)));
+            }
+        }
+        for (int f=1; f<=3; f++) {
+            for (String name : new String[]{"genome_"+f+".fa.gz", "annotation_"+f+".gff3.gz"}) {
+                items.put(new JSONObject().put("name", name).put("type", "file").put("path", dir+"/"+name).put("order", String.valueOf(++order)));
+            }
+        }
+        return new JSONObject().put("path", dir).put("items", items);
+    }
+
+    JSONObject job(int id) throws JSONException, Failure {
+        LoadJob job = jobs.get(id);
+        if (job==null) throw notFound("job "+id);
+        JSONObject json = new JSONObject().put("id", id);
+        if (System.currentTimeMillis()-job.started<jobMillis) {
+            json.put("status", "Running");
+            json.put("tasks", new JSONArray().put(new JSONObject().put("status", "Completed")).put(new JSONObject().put("status", "Running")));
+        } else {
+            json.put("status", "Completed");
+            json.put("tasks", new JSONArray().put(new JSONObject().put("status", "Completed")).put(new JSONObject().put("status", "Completed")));
+            JSONArray results = new JSONArray();
+            if (job.genome) results.put(new JSONObject().put("type", "genome").put("id", String.valueOf(job.result())));
+            json.put("results", results);
+        }
+        return json;
+    }
+
+    /**
+     * A load job; a genome job creates its genome when first seen completed.
+     */
+    class LoadJob {
+        final int id;
+        final boolean genome;
+        final long started;
+        int genomeId;
+
+        LoadJob(int id, boolean genome, long started) {
+            this.id = id;
+            this.genome = genome;
+            this.started = started;
+        }
+
+        synchronized int result() {
+            if (genomeId==0) {
+                genomeId = nextGenome.incrementAndGet();
+                created.add(genomeId);
+            }
+            return genomeId;
+        }
+    }
+
+    void authorize(Map<String,String> query) throws Failure {
+        if (query.get("username")==null || query.get("token")==null) throw new Failure(401, "Auth", "Access denied");
+    }
+
+    ////////// Responses //////////
+
+    void sendJSON(HttpExchange exchange, final JSONObject json) throws IOException, JSONException {
+        send(exchange, "application/json", out -> out.write(json.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Send a 200 response, or 304 if the client already has it: the content is a function of the URL, so a hash of the URL serves as its ETag.
+     * Job status changes, so has none.
+     */
+    void send(HttpExchange exchange, String contentType, Body body) throws IOException, JSONException {
+        if (!exchange.getRequestURI().getPath().startsWith("/jobs")) {
+            String etag = "\""+Long.toHexString(SyntheticGenome.mix(DiskCache.key(exchange.getRequestURI().toString()).hashCode()^genomes))+"\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = accept!=null && accept.contains("gzip");
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (gzip) {
+            // the fastest level, as for any streamed response; the default level manages only a few MB/s on sequence
+            out = new GZIPOutputStream(out, FastaReader.DEFAULT_CHUNK_SIZE) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                };
+        }
+        // buffer ahead of the deflater, which is slow fed line by line
+        out = new BufferedOutputStream(out, FastaReader.DEFAULT_CHUNK_SIZE);
+        try {
+            body.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    void sendError(HttpExchange exchange, Failure failure) throws IOException {
+        try {
+            byte[] body = new JSONObject().put("error", new JSONObject().put(failure.type, failure.getMessage())).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (failure.status==429 || failure.status==503) exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(failure.status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (JSONException ex) {
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            // the headers were already sent, or the client went away
+        }
+    }
+
+    static Failure notFound(String what) {
+        return new Failure(404, "Not Found", what+" not found");
+    }
+
+    static int parseId(String s) throws Failure {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException ex) {
+            throw new Failure(400, "Invalid", "not a number: "+s);
+        }
+    }
+
+    static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    static Map<String,String> query(String rawQuery) {
+        Map<String,String> query = new LinkedHashMap<String,String>();
+        if (rawQuery==null) return query;
+        for (String param : rawQuery.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq<0) continue;
+            query.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(param.substring(eq+1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * Run a server until killed.
+     * Usage: FakeCoGeServer [port] [genomes] [chromosomes] [chromosome_length] [genes_per_megabase] [max_latency_millis] [error_rate]
+     */
+    public static void main(String[] args) throws Exception {
+        FakeCoGeServer server = new FakeCoGeServer();
+        int port = args.length>0 ? Integer.parseInt(args[0]) : 0;
+        if (args.length>1) server.setGenomes(Integer.parseInt(args[1]), 4);
+        if (args.length>4) server.setGenomeSize(Integer.parseInt(args[2]), Integer.parseInt(args[3]), Double.parseDouble(args[4]));
+        if (args.length>5) server.setLatency(0, Long.parseLong(args[5]));
+        if (args.length>6) server.setErrors(Double.parseDouble(args[6]), 503);
+        System.out.println(server.start(port));
+        Thread.currentThread().join();
+    }
+
+}
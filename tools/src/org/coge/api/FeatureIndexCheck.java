@@ -0,0 +1,123 @@
+package org.coge.api;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks FeatureIndex against a linear scan of its table on random features and queries: overlap, containment and nearest-feature queries must
+ * return the same rows in the same order. Tables of every size up to a few hundred are tried, so the implicit tree is exercised with all its
+ * partial last levels, along with features long enough to span many others. Exits with status 1 on the first mismatch.
+ *
+ * Usage: FeatureIndexCheck [rounds] [seed]
+ */
+public class FeatureIndexCheck {
+
+    static final String[] CHROMOSOMES = {"chr01", "chr02", "chr03"};
+
+    public static void main(String[] args) {
+        int rounds = args.length>0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length>1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Random random = new Random(seed);
+        long queries = 0;
+        for (int round=0; round<rounds; round++) {
+            int n = round<600 ? round : random.nextInt(5000);
+            int span = 1000+random.nextInt(100000);
+            FeatureTable table = randomTable(random, n, span);
+            FeatureIndex index = new FeatureIndex(table);
+            for (int q=0; q<50; q++) {
+                String chr = CHROMOSOMES[random.nextInt(CHROMOSOMES.length)];
+                int start = random.nextInt(span)+1;
+                int stop = start+(random.nextInt(4)==0 ? 0 : random.nextInt(span/10+1));
+                int k = 1+random.nextInt(10);
+                check(seed, round, "overlapping", chr, start, stop, index.overlapping(chr, start, stop), scan(table, chr, start, stop, 0));
+                check(seed, round, "containing", chr, start, stop, index.containing(chr, start, stop), scan(table, chr, start, stop, 1));
+                check(seed, round, "containedIn", chr, start, stop, index.containedIn(chr, start, stop), scan(table, chr, start, stop, 2));
+                check(seed, round, "nearest k="+k, chr, start, start, distances(table, index.nearest(chr, start, k), start), nearest(table, chr, start, k));
+                queries += 4;
+            }
+        }
+        System.out.println("FeatureIndex agrees with a linear scan on "+queries+" queries over "+rounds+" tables (seed "+seed+")");
+    }
+
+    /**
+     * Return a table of n features on random chromosomes, mostly short with a few long, one-based and inclusive.
+     */
+    static FeatureTable randomTable(Random random, int n, int span) {
+        FeatureTable table = new FeatureTable(1);
+        for (int i=0; i<n; i++) {
+            Feature f = new Feature(i+1, "gene");
+            f.chromosome = CHROMOSOMES[random.nextInt(CHROMOSOMES.length)];
+            f.start = random.nextInt(span)+1;
+            int length = random.nextInt(20)==0 ? random.nextInt(span/2+1) : random.nextInt(2000);
+            f.stop = f.start+length;
+            f.strand = random.nextBoolean() ? 1 : -1;
+            table.add(f);
+        }
+        return table;
+    }
+
+    /**
+     * Return the rows on chr, ordered by start then row, which overlap [start, stop] (mode 0), contain it (mode 1) or lie within it (mode 2).
+     */
+    static int[] scan(FeatureTable table, String chr, int start, int stop, int mode) {
+        long[] keys = new long[table.size()];
+        int count = 0;
+        for (int row=0; row<table.size(); row++) {
+            if (!table.getChromosome(row).equals(chr)) continue;
+            int s = table.getStart(row);
+            int e = table.getStop(row);
+            boolean hit;
+            if (mode==0) {
+                hit = s<=stop && e>=start;
+            } else if (mode==1) {
+                hit = s<=start && e>=stop;
+            } else {
+                hit = s>=start && e<=stop;
+            }
+            if (hit) keys[count++] = ((long)s<<32) | row;
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+        int[] rows = new int[count];
+        for (int i=0; i<count; i++) rows[i] = (int)keys[i];
+        return rows;
+    }
+
+    /**
+     * Return the k smallest distances from pos to the features on chr, in order. Rows with equal distances may be returned in either order, so
+     * nearest() is checked by the distances of the rows it returns.
+     */
+    static int[] nearest(FeatureTable table, String chr, int pos, int k) {
+        int[] all = new int[table.size()];
+        int count = 0;
+        for (int row=0; row<table.size(); row++) {
+            if (table.getChromosome(row).equals(chr)) all[count++] = distance(table, row, pos);
+        }
+        all = Arrays.copyOf(all, count);
+        Arrays.sort(all);
+        return Arrays.copyOf(all, Math.min(k, count));
+    }
+
+    static int[] distances(FeatureTable table, int[] rows, int pos) {
+        int[] distances = new int[rows.length];
+        for (int i=0; i<rows.length; i++) distances[i] = distance(table, rows[i], pos);
+        return distances;
+    }
+
+    static int distance(FeatureTable table, int row, int pos) {
+        int s = table.getStart(row);
+        int e = table.getStop(row);
+        if (pos<s) return s-pos;
+        if (pos>e) return pos-e;
+        return 0;
+    }
+
+    static void check(long seed, int round, String query, String chr, int start, int stop, int[] actual, int[] expected) {
+        if (Arrays.equals(actual, expected)) return;
+        System.err.println("FeatureIndex mismatch (seed "+seed+", round "+round+"): "+query+" "+chr+":"+start+"-"+stop);
+        System.err.println("  index: "+Arrays.toString(actual));
+        System.err.println("  scan:  "+Arrays.toString(expected));
+        System.exit(1);
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.coge.api;
+
+import java.nio.file.Paths;
+
+/**
+ * Loads the genomes and annotation sets listed in a BulkLoader manifest, authenticating with a CoGeParameters properties file.
+ * Exits with status 1 if any load failed.
+ *
+ * Usage: LoadManifest coge.properties manifest.tsv
+ */
+public class LoadManifest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length!=2) {
+            System.err.println("Usage: LoadManifest <coge.properties> <manifest.tsv>");
+            System.exit(2);
+        }
+        CoGeParameters params = new CoGeParameters(args[0]);
+        CoGe coge = new CoGe(params.getBaseURL(), params.getUser(), params.getTokenManager());
+        BulkLoader loader = new BulkLoader(coge);
+        loader.setLog(System.out);
+        boolean failed = false;
+        for (BulkLoader.LoadResult result : loader.run(BulkLoader.readManifest(Paths.get(args[1])))) {
+            System.out.println(result);
+            failed |= !result.isSuccess();
+        }
+        params.getTokenManager().close();
+        System.exit(failed ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.coge.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import us.monoid.json.JSONArray;
+import us.monoid.json.JSONException;
+import us.monoid.json.JSONObject;
+
+/**
+ * A genome made up from its id: chromosomes of decreasing length, random sequence and evenly spread genes. Nothing is stored. Every base,
+ * gene and record is computed from the id on demand, the same way each time, so a genome of any size costs next to no memory and can be read
+ * at random. Used by FakeCoGeServer.
+ *
+ * Gene ids are genomeId*FEATURE_ID_SPAN plus the gene's one-based index in the genome, so a feature id names its genome; genome ids
+ * must stay below Integer.MAX_VALUE/FEATURE_ID_SPAN.
+ */
+public class SyntheticGenome {
+
+    public static final int FEATURE_ID_SPAN = 1000000;
+    public static final int LINE_LENGTH = 80;
+    static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    final int id;
+    final long seed;
+    final String[] names;
+    final int[] lengths;
+    final int[] firstGene;  // index of each chromosome's first gene, with the total at the end
+
+    /**
+     * Construct a genome with the given number of chromosomes, the first chromosomeLength long and the last about half that, and
+     * genesPerMegabase genes per million bases.
+     */
+    public SyntheticGenome(int id, int chromosomes, int chromosomeLength, double genesPerMegabase) {
+        if (chromosomes<1 || chromosomeLength<1) throw new IllegalArgumentException("chromosomes and chromosomeLength must be positive");
+        if (id<1 || id>Integer.MAX_VALUE/FEATURE_ID_SPAN-1) throw new IllegalArgumentException("genome id out of range: "+id);
+        this.id = id;
+        this.seed = mix(id);
+        names = new String[chromosomes];
+        lengths = new int[chromosomes];
+        firstGene = new int[chromosomes+1];
+        for (int c=0; c<chromosomes; c++) {
+            names[c] = String.format("chr%02d", c+1);
+            lengths[c] = Math.max(1, (int)(chromosomeLength*(1.0-0.5*c/chromosomes)));
+            long genes = Math.round(lengths[c]*genesPerMegabase/1e6);
+            // a gene needs room to be placed
+            firstGene[c+1] = firstGene[c]+(int)Math.min(genes, lengths[c]/1000);
+        }
+        if (firstGene[chromosomes]>=FEATURE_ID_SPAN) throw new IllegalArgumentException("too many genes for the feature id span: "+firstGene[chromosomes]);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return "Synthetic genome "+id;
+    }
+
+    public int getChromosomeCount() {
+        return names.length;
+    }
+
+    public String getChromosomeName(int c) {
+        return names[c];
+    }
+
+    public int getChromosomeLength(int c) {
+        return lengths[c];
+    }
+
+    /**
+     * Return the index of the named chromosome, or -1 if there is none.
+     */
+    public int chromosome(String name) {
+        for (int c=0; c<names.length; c++) {
+            if (names[c].equals(name)) return c;
+        }
+        return -1;
+    }
+
+    public long getLength() {
+        long length = 0;
+        for (int l : lengths) length += l;
+        return length;
+    }
+
+    public int getGeneCount() {
+        return firstGene[names.length];
+    }
+
+    /**
+     * Return the base at a one-based position on a chromosome. Each 32 bases come from one 64-bit hash of the position's block.
+     */
+    public byte base(int c, int pos) {
+        long block = mix(seed^((long)c<<40)^((pos-1)>>>5));
+        return BASES[(int)(block>>>(2*((pos-1)&31)))&3];
+    }
+
+    /**
+     * Write bases start to stop, one-based and inclusive, of a chromosome as FASTA lines under the given header.
+     */
+    public void writeFasta(String header, int c, int start, int stop, boolean reverse, OutputStream out) throws IOException {
+        out.write((">"+header+"\n").getBytes(StandardCharsets.UTF_8));
+        byte[] line = new byte[LINE_LENGTH+1];
+        int n = 0;
+        long blockIndex = -1;
+        long block = 0;
+        for (int i=0; i<=stop-start; i++) {
+            int pos = reverse ? stop-i : start+i;
+            // one hash per 32 bases, as in base()
+            if ((pos-1)>>>5!=blockIndex) {
+                blockIndex = (pos-1)>>>5;
+                block = mix(seed^((long)c<<40)^blockIndex);
+            }
+            byte base = BASES[(int)(block>>>(2*((pos-1)&31)))&3];
+            line[n++] = reverse ? complement(base) : base;
+            if (n==LINE_LENGTH) {
+                line[n] = '\n';
+                out.write(line, 0, n+1);
+                n = 0;
+            }
+        }
+        if (n>0) {
+            line[n] = '\n';
+            out.write(line, 0, n+1);
+        }
+    }
+
+    /**
+     * Write a whole chromosome as FASTA.
+     */
+    public void writeFasta(int c, OutputStream out) throws IOException {
+        writeFasta(names[c], c, 1, lengths[c], false, out);
+    }
+
+    /**
+     * Return the gene with the given zero-based index in the genome as a feature record, as returned by the features endpoints.
+     */
+    public JSONObject gene(int index) throws JSONException {
+        int c = 0;
+        while (firstGene[c+1]<=index) c++;
+        int i = index-firstGene[c];
+        int count = firstGene[c+1]-firstGene[c];
+        int spacing = lengths[c]/count;
+        long h = mix(seed^0x9e3779b97f4a7c15L^index);
+        int start = i*spacing+1+(int)((h&0xffff)%Math.max(1, spacing/4));
+        int length = 300+(int)((h>>>16&0xffffff)%Math.max(1, Math.min(spacing/2, 12000)));
+        JSONObject json = new JSONObject();
+        json.put("id", id*FEATURE_ID_SPAN+index+1);
+        json.put("type", "gene");
+        json.put("name", String.format("SYN%d.%sG%06d", id, names[c], (i+1)*10));
+        json.put("chromosome", names[c]);
+        json.put("start", start);
+        json.put("stop", Math.min(lengths[c], start+length-1));
+        json.put("strand", (h>>>40&1)==0 ? 1 : -1);
+        json.put("genome", new JSONObject().put("id", id));
+        return json;
+    }
+
+    /**
+     * Return the genome's record, as returned by the genomes endpoint, with the given organism and experiments.
+     */
+    public JSONObject toJSON(JSONObject organism, JSONArray experiments) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("name", getName());
+        json.put("description", names.length+" chromosomes, "+getGeneCount()+" genes");
+        json.put("link", "");
+        json.put("version", "1");
+        json.put("organism", organism);
+        json.put("sequence_type", new JSONObject().put("id", 1).put("name", "unmasked").put("description", "unmasked sequence data"));
+        json.put("restricted", false);
+        json.put("deleted", false);
+        json.put("chromosome_count", names.length);
+        JSONArray chromosomes = new JSONArray();
+        for (int c=0; c<names.length; c++) chromosomes.put(new JSONObject().put("name", names[c]).put("length", lengths[c]));
+        json.put("chromosomes", chromosomes);
+        json.put("experiments", experiments);
+        json.put("feature_types", new JSONArray().put(new JSONObject().put("type_id", 1).put("type_name", "gene").put("count", getGeneCount())));
+        return json;
+    }
+
+    static byte complement(byte base) {
+        switch (base) {
+        case 'A': return 'T';
+        case 'C': return 'G';
+        case 'G': return 'C';
+        case 'T': return 'A';
+        default: return base;
+        }
+    }
+
+    /**
+     * The SplitMix64 finalizer: a cheap, well-mixed 64-bit hash.
+     */
+    static long mix(long z) {
+        z = (z^(z>>>30))*0xbf58476d1ce4e5b9L;
+        z = (z^(z>>>27))*0x94d049bb133111ebL;
+        return z^(z>>>31);
+    }
+
+}